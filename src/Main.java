@@ -1,9 +1,14 @@
-import com.io.CityLoader;
-import com.io.TrafficLightLoader;
+import com.io.CityGraphFile;
 import com.model.CityMap;
 import com.model.Intersection;
 import com.model.Road;
+import com.pathfinding.CompactCityGraph;
+import com.pathfinding.CostMetric;
 import com.pathfinding.PathFinder;
+import com.pathfinding.RoadGraph;
+import com.pathfinding.RouteCache;
+import com.pathfinding.RoutePath;
+import com.pathfinding.RouteReplanner;
 import com.ui.MapView;
 import javafx.animation.FadeTransition;
 import javafx.animation.PauseTransition;
@@ -27,6 +32,7 @@ import javafx.scene.layout.StackPane;
 import javafx.geometry.Side;
 import java.net.URL;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,6 +44,7 @@ public class Main extends Application {
     private boolean sfx = true; // Sound effects flag
     private boolean isSettingsMenuOpen = false;
     private boolean isInfoMenuOpen = false;
+    private final RouteCache routeCache = new RouteCache(); // Top paths per start/destination pair
 
     public static void main(String[] args) {
         launch(args); // Launch the JavaFX application
@@ -75,12 +82,9 @@ public class Main extends Application {
         // Load city and traffic lights
         CityMap cityMap = null;
         try {
-            cityMap = CityLoader.loadCityFromCSV("src/com/io/Roads.csv", "src/com/io/intersectionsCoords.csv"); // Load city map from CSV
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        try {
-            TrafficLightLoader.loadTrafficLightsFromCSV("src/com/io/traffic_lights.csv", cityMap); // Load traffic lights from CSV
+            // Binary graph converted from the CSV files on first launch, and again whenever they change
+            cityMap = CityGraphFile.load(Paths.get("src/com/io/city.graph"), "src/com/io/Roads.csv",
+                    "src/com/io/intersectionsCoords.csv", "src/com/io/traffic_lights.csv");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -180,28 +184,32 @@ public class Main extends Application {
             }
         }
     }
-    private void highlightPath(List<Road> path) {
-        // Loop through the list of roads and highlight them one by one with a delay
-        for (int i = 0; i < path.size(); i++) {
-            final Road road = path.get(i);  // Get the current road
-            // Add a delay before highlighting each road
-            PauseTransition pause = new PauseTransition(Duration.seconds(3 * i));  // 3 seconds per road (increasing delay for each)
-
-            pause.setOnFinished(event -> {
-                // Highlight the road when the pause is finished
-                road.highlightRoad(); // Green color with a thicker line
-
-                // After the highlight, wait another 3 seconds before disabling the highlight
-                PauseTransition disableHighlightPause = new PauseTransition(Duration.seconds(3));
-                disableHighlightPause.setOnFinished(disableEvent -> {
-                    // Disable the highlight
-                    road.highlightRoad(); // Call again to disable highlight (or reset style)
-                });
-                disableHighlightPause.play(); // Start the disable highlight pause
-            });
-
-            pause.play(); // Start the pause for the current road
+    private void driveRoute(List<Road> plannedRoute, RouteReplanner replanner) {
+        // Pick up road changes since the last step; the planned route is kept until a road on it is blocked
+        replanner.replan();
+        List<Road> route = plannedRoute;
+        if (route.stream().anyMatch(Road::isBlocked)) {
+            route = replanner.getRoute();
+            System.out.println("Rerouting from " + replanner.getPosition().getId() + " (" + replanner + ")");
+        }
+        if (route.isEmpty()) {
+            System.out.println(replanner.hasArrived() ? "Arrived at " + replanner.getDestination().getId()
+                    : "No route left to " + replanner.getDestination().getId());
+            return;
         }
+
+        final Road road = route.get(0);
+        final List<Road> remaining = route.subList(1, route.size());
+        road.highlightRoad(); // Green color with a thicker line
+
+        // Stay on the road for 3 seconds, then disable the highlight and continue from its end
+        PauseTransition pause = new PauseTransition(Duration.seconds(3));
+        pause.setOnFinished(event -> {
+            road.highlightRoad(); // Call again to disable highlight (or reset style)
+            replanner.moveTo(road.otherEnd(replanner.getPosition()));
+            driveRoute(remaining, replanner);
+        });
+        pause.play();
     }
 
 
@@ -338,6 +346,9 @@ public class Main extends Application {
         ContextMenu pathMenu = new ContextMenu();
         applyContextMenuTheme(pathMenu, true); // Optional: apply dark theme if needed
 
+        // Topology is fixed after loading, so the graph is built once and only weights are re-read per search
+        RoadGraph roadGraph = RoadGraph.of(cityMap);
+
 // Add action listener to search button
         searchButton.setOnAction(e -> {
             String start = startField.getText();
@@ -350,8 +361,11 @@ public class Main extends Application {
             if (startIntersection == null || destinationIntersection == null) {
                 System.out.println("Invalid start or destination location.");
             } else {
-                // Get up to 3 top paths
-                List<List<Road>> topPaths = PathFinder.findTopKPaths(startIntersection, destinationIntersection, cityMap.getRoads(), 3);
+                // Get up to 3 top paths, reusing the cached ones while no road on them changed
+                List<RoutePath> topPaths = routeCache.getOrCompute(startIntersection, destinationIntersection, 3,
+                        CostMetric.CURRENT_WEIGHT,
+                        () -> PathFinder.findTopKRoutes(startIntersection, destinationIntersection,
+                                CompactCityGraph.snapshot(roadGraph), 3, null));
 
                 // Clear existing items in the path menu
                 pathMenu.getItems().clear();
@@ -362,14 +376,12 @@ public class Main extends Application {
                     pathMenu.getItems().add(noPathItem);
                 } else {
                     int index = 1;
-                    for (List<Road> path : topPaths) {
-                        // Create a list of intersection names
+                    for (RoutePath topPath : topPaths) {
+                        List<Road> path = topPath.getRoads();
+                        // Create a list of intersection names, in driving order (two-way roads may run backwards)
                         List<String> pathIntersections = new ArrayList<>();
-                        for (Road road : path) {
-                            pathIntersections.add(road.getSource().getId());
-                        }
-                        if (!path.isEmpty()) {
-                            pathIntersections.add(path.get(path.size() - 1).getDestination().getId());
+                        for (Intersection intersection : topPath.getIntersections()) {
+                            pathIntersections.add(intersection.getId());
                         }
 
                         // Convert to readable string
@@ -380,7 +392,9 @@ public class Main extends Application {
                         int finalIndex = index;
                         pathItem.setOnAction(event -> {
                             System.out.println("Selected Path " + finalIndex);
-                            highlightPath(path);
+                            // Keeps D* Lite state for this trip so blocked roads are worked around incrementally
+                            RouteReplanner replanner = RouteReplanner.plan(roadGraph, startIntersection, destinationIntersection);
+                            driveRoute(path, replanner);
 
                         });
 
@@ -0,0 +1,541 @@
+package com.io;
+
+import com.model.CityMap;
+import com.model.Intersection;
+import com.model.OneWayRoad;
+import com.model.Road;
+import com.model.TrafficLight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A city map in a versioned binary file that is opened with {@link FileChannel#map}, so a launch
+ * reads primitive arrays straight from the page cache instead of parsing the CSV files. The file
+ * is written once by {@link #convert} (or the command line {@link #main}) and describes the static
+ * map only: intersections, roads, and traffic light timings, but no vehicles or light phases.
+ * <p>
+ * Everything is little-endian. A header holds the magic "SRGF", the format version, the
+ * intersection, road and light counts, the file size, and a table of sections (offset, length and
+ * CRC32C each), followed by a CRC32C of the header itself. Each section starts on an 8-byte
+ * boundary and is a flat array; see the section constants for their contents. Roads are stored
+ * in compressed sparse row order: the roads leaving intersection i occupy slots
+ * [firstRoad(i), firstRoad(i + 1)), and each slot also records the road's position in
+ * {@link CityMap#getRoads()}, so {@link #toCityMap()} rebuilds the exact map that was written.
+ * <p>
+ * Opening a file checks every checksum and every index in it, so a truncated or damaged file
+ * fails with an IOException up front rather than with a wrong map later. Files are limited to
+ * 2 GiB, the most a single mapping can hold.
+ */
+public final class CityGraphFile {
+    private static final int MAGIC = 0x53524746; // "SRGF"
+    private static final int VERSION = 1;
+
+    // Sections, in file order; n intersections, m roads, k lights
+    private static final int ID_OFFSETS = 0;     // int[n + 1], where each id starts in ID_BYTES
+    private static final int ID_BYTES = 1;       // byte[], the UTF-8 ids back to back
+    private static final int X = 2;              // double[n]
+    private static final int Y = 3;              // double[n]
+    private static final int FIRST_ROAD = 4;     // int[n + 1], first slot of the roads leaving each intersection
+    private static final int TARGETS = 5;        // int[m], destination intersection of each slot
+    private static final int LENGTHS = 6;        // double[m]
+    private static final int FLAGS = 7;          // byte[m], BLOCKED | ONE_WAY
+    private static final int ROAD_INDEX = 8;     // int[m], index of each slot's road in CityMap.getRoads()
+    private static final int LIGHT_NODES = 9;    // int[k], intersection of each light
+    private static final int LIGHT_TIMINGS = 10; // int[4k], green, yellow, red and offset of each light
+    private static final int SECTION_COUNT = 11;
+
+    private static final int SECTION_TABLE = 32;
+    private static final int SECTION_ENTRY = 24; // offset long, length long, CRC32C int, padding
+    private static final int HEADER_CRC = SECTION_TABLE + SECTION_COUNT * SECTION_ENTRY;
+    private static final int HEADER_SIZE = HEADER_CRC + 8;
+
+    private static final byte BLOCKED = 1;
+    private static final byte ONE_WAY = 2;
+
+    private final int intersectionCount;
+    private final int roadCount;
+    private final int lightCount;
+    private final IntBuffer idOffsets;
+    private final ByteBuffer idBytes;
+    private final DoubleBuffer xs;
+    private final DoubleBuffer ys;
+    private final IntBuffer firstRoads;
+    private final IntBuffer targets;
+    private final DoubleBuffer lengths;
+    private final ByteBuffer flags;
+    private final IntBuffer roadIndexes;
+    private final IntBuffer lightNodes;
+    private final IntBuffer lightTimings;
+
+    private CityGraphFile(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a city graph file: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported city graph version " + version + " in " + file);
+        }
+        if (checksum(buffer, 0, HEADER_CRC) != buffer.getInt(HEADER_CRC)) {
+            throw new IOException("Damaged header in " + file);
+        }
+        if (buffer.getLong(24) != buffer.capacity()) {
+            throw new IOException("Truncated city graph file " + file + ": " + buffer.capacity()
+                    + " of " + buffer.getLong(24) + " bytes");
+        }
+        intersectionCount = buffer.getInt(8);
+        roadCount = buffer.getInt(12);
+        lightCount = buffer.getInt(16);
+        if (intersectionCount < 0 || roadCount < 0 || lightCount < 0) {
+            throw new IOException("Damaged header in " + file);
+        }
+
+        ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+        for (int s = 0; s < SECTION_COUNT; s++) {
+            int entry = SECTION_TABLE + s * SECTION_ENTRY;
+            long offset = buffer.getLong(entry);
+            long length = buffer.getLong(entry + 8);
+            if (offset < HEADER_SIZE || offset % 8 != 0 || length < 0 || offset + length > buffer.capacity()) {
+                throw new IOException("Section " + s + " lies outside " + file);
+            }
+            if (checksum(buffer, (int) offset, (int) length) != buffer.getInt(entry + 16)) {
+                throw new IOException("Checksum mismatch in section " + s + " of " + file);
+            }
+            sections[s] = buffer.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        idOffsets = ints(sections, ID_OFFSETS, intersectionCount + 1, file);
+        idBytes = sections[ID_BYTES];
+        xs = doubles(sections, X, intersectionCount, file);
+        ys = doubles(sections, Y, intersectionCount, file);
+        firstRoads = ints(sections, FIRST_ROAD, intersectionCount + 1, file);
+        targets = ints(sections, TARGETS, roadCount, file);
+        lengths = doubles(sections, LENGTHS, roadCount, file);
+        flags = section(sections, FLAGS, roadCount, file);
+        roadIndexes = ints(sections, ROAD_INDEX, roadCount, file);
+        lightNodes = ints(sections, LIGHT_NODES, lightCount, file);
+        lightTimings = ints(sections, LIGHT_TIMINGS, 4 * lightCount, file);
+        validate(file);
+    }
+
+    // Open and check a file written by write() or convert()
+    public static CityGraphFile open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a city graph file: " + file);
+            } else if (size > Integer.MAX_VALUE) {
+                throw new IOException("City graph file " + file + " is too large to map: " + size + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // Stays valid after the channel closes
+        }
+        return new CityGraphFile(buffer.order(ByteOrder.LITTLE_ENDIAN), file);
+    }
+
+    // Checks the checksums cannot catch: a file written wrongly, or by hand, must still index safely
+    private void validate(Path file) throws IOException {
+        checkAscending(idOffsets, idBytes.capacity(), "id offsets", file);
+        checkAscending(firstRoads, roadCount, "road offsets", file);
+        boolean[] seen = new boolean[roadCount];
+        for (int slot = 0; slot < roadCount; slot++) {
+            int target = targets.get(slot);
+            int index = roadIndexes.get(slot);
+            if (target < 0 || target >= intersectionCount || index < 0 || index >= roadCount || seen[index]
+                    || (flags.get(slot) & ~(BLOCKED | ONE_WAY)) != 0) {
+                throw new IOException("Invalid road in slot " + slot + " of " + file);
+            }
+            seen[index] = true;
+        }
+        for (int l = 0; l < lightCount; l++) {
+            if (lightNodes.get(l) < 0 || lightNodes.get(l) >= intersectionCount) {
+                throw new IOException("Invalid traffic light " + l + " in " + file);
+            }
+        }
+    }
+
+    // values[0] == 0, values never decrease, and the last one is `end`
+    private static void checkAscending(IntBuffer values, int end, String what, Path file) throws IOException {
+        int previous = 0;
+        for (int i = 0; i < values.capacity(); i++) {
+            int value = values.get(i);
+            if (value < previous || (i == 0 && value != 0)) {
+                throw new IOException("Invalid " + what + " in " + file);
+            }
+            previous = value;
+        }
+        if (previous != end) {
+            throw new IOException("Invalid " + what + " in " + file);
+        }
+    }
+
+    private static ByteBuffer section(ByteBuffer[] sections, int s, long bytes, Path file) throws IOException {
+        if (sections[s].capacity() != bytes) {
+            throw new IOException("Section " + s + " of " + file + " has " + sections[s].capacity()
+                    + " bytes, expected " + bytes);
+        }
+        return sections[s];
+    }
+
+    private static IntBuffer ints(ByteBuffer[] sections, int s, int count, Path file) throws IOException {
+        return section(sections, s, 4L * count, file).asIntBuffer();
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer[] sections, int s, int count, Path file) throws IOException {
+        return section(sections, s, 8L * count, file).asDoubleBuffer();
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    public int getIntersectionCount() {
+        return intersectionCount;
+    }
+
+    public int getRoadCount() {
+        return roadCount;
+    }
+
+    public int getLightCount() {
+        return lightCount;
+    }
+
+    public String getId(int intersection) {
+        int start = idOffsets.get(intersection);
+        byte[] id = new byte[idOffsets.get(intersection + 1) - start];
+        idBytes.get(start, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    public double getX(int intersection) {
+        return xs.get(intersection);
+    }
+
+    public double getY(int intersection) {
+        return ys.get(intersection);
+    }
+
+    // The roads leaving `intersection` are the slots firstRoad(intersection) to firstRoad(intersection + 1) - 1
+    public int firstRoad(int intersection) {
+        return firstRoads.get(intersection);
+    }
+
+    public int getTarget(int slot) {
+        return targets.get(slot);
+    }
+
+    public double getLength(int slot) {
+        return lengths.get(slot);
+    }
+
+    public boolean isBlocked(int slot) {
+        return (flags.get(slot) & BLOCKED) != 0;
+    }
+
+    public boolean isOneWay(int slot) {
+        return (flags.get(slot) & ONE_WAY) != 0;
+    }
+
+    // Position of the slot's road in the CityMap the file was written from
+    public int getRoadIndex(int slot) {
+        return roadIndexes.get(slot);
+    }
+
+    // Build the map the file was written from, roads in their original order, with its traffic lights
+    public CityMap toCityMap() {
+        CityMap cityMap = new CityMap();
+        Intersection[] intersections = new Intersection[intersectionCount];
+        for (int i = 0; i < intersectionCount; i++) {
+            intersections[i] = new Intersection(getId(i), xs.get(i), ys.get(i));
+            cityMap.addIntersection(intersections[i]);
+        }
+
+        Road[] roads = new Road[roadCount];
+        for (int from = 0; from < intersectionCount; from++) {
+            for (int slot = firstRoads.get(from); slot < firstRoads.get(from + 1); slot++) {
+                Intersection source = intersections[from];
+                Intersection destination = intersections[targets.get(slot)];
+                roads[roadIndexes.get(slot)] = isOneWay(slot)
+                        ? new OneWayRoad(source, destination, lengths.get(slot), isBlocked(slot))
+                        : new Road(source, destination, lengths.get(slot), isBlocked(slot));
+            }
+        }
+        for (Road road : roads) {
+            cityMap.addRoad(road);
+        }
+
+        for (int l = 0; l < lightCount; l++) {
+            intersections[lightNodes.get(l)].setTrafficLight(new TrafficLight(lightTimings.get(4 * l),
+                    lightTimings.get(4 * l + 1), lightTimings.get(4 * l + 2), lightTimings.get(4 * l + 3)));
+        }
+        return cityMap;
+    }
+
+    /**
+     * Write the static part of a map. The file is written next to `file` and moved into place,
+     * so a reader never sees half a file. Only Road and OneWayRoad can be stored, and lights are
+     * stored with their timings and offset, not their current phase.
+     */
+    public static void write(CityMap cityMap, Path file) throws IOException {
+        List<Intersection> intersections = new ArrayList<>(cityMap.getIntersections());
+        List<Road> roads = cityMap.getRoads();
+        int n = intersections.size();
+        int m = roads.size();
+        Map<Intersection, Integer> index = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            index.put(intersections.get(i), i);
+        }
+
+        // Ids and coordinates, plus the lights
+        int[] idOffsets = new int[n + 1];
+        byte[][] ids = new byte[n][];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        List<Integer> lit = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Intersection intersection = intersections.get(i);
+            ids[i] = intersection.getId().getBytes(StandardCharsets.UTF_8);
+            idOffsets[i + 1] = Math.addExact(idOffsets[i], ids[i].length);
+            xs[i] = intersection.getX();
+            ys[i] = intersection.getY();
+            if (intersection.getTrafficLight() != null) {
+                lit.add(i);
+            }
+        }
+        byte[] idBytes = new byte[idOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(ids[i], 0, idBytes, idOffsets[i], ids[i].length);
+        }
+        int[] lightNodes = new int[lit.size()];
+        int[] lightTimings = new int[4 * lit.size()];
+        for (int l = 0; l < lightNodes.length; l++) {
+            lightNodes[l] = lit.get(l);
+            TrafficLight light = intersections.get(lightNodes[l]).getTrafficLight();
+            lightTimings[4 * l] = light.getGreenDuration();
+            lightTimings[4 * l + 1] = light.getYellowDuration();
+            lightTimings[4 * l + 2] = light.getRedDuration();
+            lightTimings[4 * l + 3] = light.getOffset();
+        }
+
+        // Roads grouped by source with a stable counting sort, so each group keeps the map's order
+        int[] sources = new int[m];
+        int[] firstRoads = new int[n + 1];
+        for (int r = 0; r < m; r++) {
+            Road road = roads.get(r);
+            if (road.getClass() != Road.class && road.getClass() != OneWayRoad.class) {
+                throw new IllegalArgumentException("Cannot store a " + road.getClass().getName() + " in a city graph file");
+            }
+            sources[r] = indexOf(index, road.getSource());
+            firstRoads[sources[r] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            firstRoads[i + 1] += firstRoads[i];
+        }
+        int[] next = new int[n];
+        System.arraycopy(firstRoads, 0, next, 0, n);
+        int[] targets = new int[m];
+        double[] lengths = new double[m];
+        byte[] flags = new byte[m];
+        int[] roadIndexes = new int[m];
+        for (int r = 0; r < m; r++) {
+            Road road = roads.get(r);
+            int slot = next[sources[r]]++;
+            targets[slot] = indexOf(index, road.getDestination());
+            lengths[slot] = road.getLength();
+            flags[slot] = (byte) ((road.isBlocked() ? BLOCKED : 0) | (road.isOneWay() ? ONE_WAY : 0));
+            roadIndexes[slot] = r;
+        }
+
+        ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+        sections[ID_OFFSETS] = encode(idOffsets);
+        sections[ID_BYTES] = ByteBuffer.wrap(idBytes);
+        sections[X] = encode(xs);
+        sections[Y] = encode(ys);
+        sections[FIRST_ROAD] = encode(firstRoads);
+        sections[TARGETS] = encode(targets);
+        sections[LENGTHS] = encode(lengths);
+        sections[FLAGS] = ByteBuffer.wrap(flags);
+        sections[ROAD_INDEX] = encode(roadIndexes);
+        sections[LIGHT_NODES] = encode(lightNodes);
+        sections[LIGHT_TIMINGS] = encode(lightTimings);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, n).putInt(12, m).putInt(16, lightNodes.length);
+        long offset = HEADER_SIZE;
+        for (int s = 0; s < SECTION_COUNT; s++) {
+            int entry = SECTION_TABLE + s * SECTION_ENTRY;
+            int length = sections[s].remaining();
+            header.putLong(entry, offset).putLong(entry + 8, length);
+            header.putInt(entry + 16, checksum(sections[s], 0, length));
+            offset = (offset + length + 7) & ~7L;
+        }
+        header.putLong(24, offset);
+        header.putInt(HEADER_CRC, checksum(header, 0, HEADER_CRC));
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            for (int s = 0; s < SECTION_COUNT; s++) {
+                writeFully(channel, sections[s], header.getLong(SECTION_TABLE + s * SECTION_ENTRY));
+            }
+            if (channel.size() < offset) {
+                writeFully(channel, ByteBuffer.allocate((int) (offset - channel.size())), channel.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int indexOf(Map<Intersection, Integer> index, Intersection intersection) {
+        Integer i = index.get(intersection);
+        if (i == null) {
+            throw new IllegalArgumentException("Road ends at " + intersection.getId() + ", which is not in the map");
+        }
+        return i;
+    }
+
+    private static ByteBuffer encode(int[] values) {
+        ByteBuffer bytes = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(values);
+        return bytes;
+    }
+
+    private static ByteBuffer encode(double[] values) {
+        ByteBuffer bytes = ByteBuffer.allocate(8 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asDoubleBuffer().put(values);
+        return bytes;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        ByteBuffer source = bytes.duplicate();
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    /**
+     * Convert the CSV files into a city graph file, then open the result and check that it
+     * rebuilds the same map as the CSV loaders, road for road. Returns the loaded map.
+     */
+    public static CityMap convert(String roadsFilePath, String intersectionsFilePath, String trafficLightsFilePath,
+                                  Path file) throws IOException {
+        CityMap cityMap = CityLoader.loadCityFromCSV(roadsFilePath, intersectionsFilePath);
+        TrafficLightLoader.loadTrafficLightsFromCSV(trafficLightsFilePath, cityMap);
+        write(cityMap, file);
+
+        String difference = difference(cityMap, open(file).toCityMap());
+        if (difference != null) {
+            Files.deleteIfExists(file);
+            throw new IOException("City graph file " + file + " does not match the CSV files: " + difference);
+        }
+        return cityMap;
+    }
+
+    /**
+     * The map for a launch: read from `file` if it is newer than all three CSV files, otherwise
+     * loaded from the CSV files and written to `file` for the next launch. A file that cannot be
+     * read is reported and rebuilt; one that cannot be written only costs the next launch a parse.
+     */
+    public static CityMap load(Path file, String roadsFilePath, String intersectionsFilePath,
+                               String trafficLightsFilePath) throws IOException {
+        if (isUpToDate(file, roadsFilePath, intersectionsFilePath, trafficLightsFilePath)) {
+            try {
+                return open(file).toCityMap();
+            } catch (IOException e) {
+                System.out.println("Warning: " + e.getMessage() + "; rebuilding it from the CSV files");
+            }
+        }
+        CityMap cityMap = CityLoader.loadCityFromCSV(roadsFilePath, intersectionsFilePath);
+        TrafficLightLoader.loadTrafficLightsFromCSV(trafficLightsFilePath, cityMap);
+        try {
+            write(cityMap, file);
+        } catch (IOException e) {
+            System.out.println("Warning: could not write " + file + ": " + e.getMessage());
+        }
+        return cityMap;
+    }
+
+    private static boolean isUpToDate(Path file, String... sources) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        long written = Files.getLastModifiedTime(file).toMillis();
+        for (String source : sources) {
+            if (Files.getLastModifiedTime(Paths.get(source)).toMillis() > written) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // First difference between two maps, or null if they have the same intersections, roads and lights
+    static String difference(CityMap expected, CityMap actual) {
+        if (expected.getIntersections().size() != actual.getIntersections().size()) {
+            return expected.getIntersections().size() + " intersections became " + actual.getIntersections().size();
+        }
+        for (Intersection a : expected.getIntersections()) {
+            Intersection b = actual.getIntersectionById(a.getId());
+            if (b == null || a.getX() != b.getX() || a.getY() != b.getY()) {
+                return "intersection " + a.getId() + " differs";
+            }
+            TrafficLight p = a.getTrafficLight();
+            TrafficLight q = b.getTrafficLight();
+            if ((p == null) != (q == null) || (p != null && (p.getGreenDuration() != q.getGreenDuration()
+                    || p.getYellowDuration() != q.getYellowDuration() || p.getRedDuration() != q.getRedDuration()
+                    || p.getOffset() != q.getOffset()))) {
+                return "traffic light at " + a.getId() + " differs";
+            }
+        }
+        List<Road> x = expected.getRoads();
+        List<Road> y = actual.getRoads();
+        if (x.size() != y.size()) {
+            return x.size() + " roads became " + y.size();
+        }
+        for (int r = 0; r < x.size(); r++) {
+            Road a = x.get(r);
+            Road b = y.get(r);
+            if (!a.getSource().getId().equals(b.getSource().getId())
+                    || !a.getDestination().getId().equals(b.getDestination().getId())
+                    || Double.doubleToLongBits(a.getLength()) != Double.doubleToLongBits(b.getLength())
+                    || a.isBlocked() != b.isBlocked() || a.getClass() != b.getClass()) {
+                return "road " + r + " (" + a.getSource().getId() + " -> " + a.getDestination().getId() + ") differs";
+            }
+        }
+        return null;
+    }
+
+    // Usage: CityGraphFile <roads.csv> <intersections.csv> <traffic_lights.csv> <output>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.out.println("Usage: CityGraphFile <roads.csv> <intersections.csv> <traffic_lights.csv> <output>");
+            return;
+        }
+        long start = System.nanoTime();
+        CityMap cityMap = convert(args[0], args[1], args[2], Paths.get(args[3]));
+        System.out.println("Wrote " + cityMap.getIntersections().size() + " intersections and "
+                + cityMap.getRoads().size() + " roads to " + args[3] + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
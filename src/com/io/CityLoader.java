@@ -5,70 +5,206 @@ import com.model.Intersection;
 import com.model.Road;
 import com.model.OneWayRoad;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads a city from two CSV files, intersections (id,x,y) and roads
+ * (from,to,length,isBlocked,isOneWay). Both are streamed through a {@link CsvScanner}; each
+ * intersection id becomes a String once, and road rows resolve their ends from the raw bytes.
+ * A malformed row stops the load with a {@link CsvFormatException} naming the file and line.
+ * Roads whose ends are not in the intersections file are skipped, and counted in one warning.
+ * <p>
+ * Large files are split into line-aligned byte ranges parsed in parallel on a ForkJoinPool:
+ * first the intersections, which are then merged into one id table, then the roads, which
+ * resolve their ends against that table. Roads are added to the map in file order, so the
+ * result is the same as a sequential load. When several ranges are malformed, the error
+ * reported is the first one in the file.
+ */
 public class CityLoader {
+    private static final long MIN_CHUNK_BYTES = 4 << 20; // Files below this are parsed on the calling thread
+    private static final int CHUNKS_PER_THREAD = 4;      // Spare chunks even out uneven row lengths
 
     // Load intersections from a CSV file (id,x,y)
-    private static void loadIntersectionsFromCSV(String intersectionsFilePath, CityMap cityMap) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(intersectionsFilePath));
-        String line;
-
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            if (line.isEmpty() || line.startsWith("#")) continue;
-
-            String[] parts = line.split(",");
-            if (parts.length == 3) {
-                String id = parts[0];
-                double x = Double.parseDouble(parts[1]);
-                double y = Double.parseDouble(parts[2]);
-
-                cityMap.addIntersection(id, x, y);
+    private static IdTable<Intersection> loadIntersectionsFromCSV(Path intersectionsFile, CityMap cityMap, ForkJoinPool pool) throws IOException {
+        List<IntersectionChunk> chunks = new ArrayList<>();
+        long[] offsets = chunkOffsets(intersectionsFile, pool);
+        for (int k = 0; k + 1 < offsets.length; k++) {
+            chunks.add(new IntersectionChunk(offsets[k], offsets[k + 1]));
+        }
+        parseAll(intersectionsFile, chunks, pool);
+
+        // Merge in file order, so a repeated id ends up as its last row, as before
+        IdTable<Intersection> ids = new IdTable<>();
+        for (IntersectionChunk chunk : chunks) {
+            for (Intersection intersection : chunk.intersections) {
+                cityMap.addIntersection(intersection);
+                byte[] id = intersection.getId().getBytes(StandardCharsets.UTF_8);
+                ids.put(id, 0, id.length, intersection);
             }
         }
-        reader.close();
+        return ids;
     }
 
     // Load city (roads and intersections) from CSV files
     public static CityMap loadCityFromCSV(String roadsFilePath, String intersectionsFilePath) throws IOException {
+        return loadCityFromCSV(roadsFilePath, intersectionsFilePath, ForkJoinPool.commonPool());
+    }
+
+    public static CityMap loadCityFromCSV(String roadsFilePath, String intersectionsFilePath, ForkJoinPool pool) throws IOException {
         CityMap cityMap = new CityMap();
 
         // Load intersections first
-        loadIntersectionsFromCSV(intersectionsFilePath, cityMap);
+        IdTable<Intersection> ids = loadIntersectionsFromCSV(Paths.get(intersectionsFilePath), cityMap, pool);
+
+        // Now load the roads; the id table is only read from here on, so the chunks share it
+        Path roadsFile = Paths.get(roadsFilePath);
+        List<RoadChunk> chunks = new ArrayList<>();
+        long[] offsets = chunkOffsets(roadsFile, pool);
+        for (int k = 0; k + 1 < offsets.length; k++) {
+            chunks.add(new RoadChunk(offsets[k], offsets[k + 1], ids));
+        }
+        parseAll(roadsFile, chunks, pool);
+
+        int skipped = 0;
+        int firstSkippedLine = 0;
+        for (RoadChunk chunk : chunks) {
+            for (Road road : chunk.roads) {
+                cityMap.addRoad(road);
+            }
+            if (skipped == 0 && chunk.skipped > 0) {
+                firstSkippedLine = chunk.firstLine + chunk.firstSkippedLine;
+            }
+            skipped += chunk.skipped;
+        }
+
+        if (skipped > 0) {
+            System.out.println("Warning: " + skipped + " road(s) in " + roadsFile.getFileName()
+                    + " reference unknown intersections and were skipped (first at line " + firstSkippedLine + ")");
+        }
+        return cityMap;
+    }
+
+    // Line-aligned range boundaries for a file; a single range unless it is worth splitting
+    private static long[] chunkOffsets(Path file, ForkJoinPool pool) throws IOException {
+        long size = Files.size(file);
+        long count = Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD, size / MIN_CHUNK_BYTES);
+        return count > 1 ? CsvScanner.chunks(file, (int) count) : new long[]{0, size};
+    }
+
+    // Parse every chunk, in parallel if there are several, then place each at its first line in the file
+    private static void parseAll(Path file, List<? extends Chunk> chunks, ForkJoinPool pool) throws IOException {
+        if (chunks.size() == 1) {
+            chunks.get(0).parse(file);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                tasks.add(ForkJoinTask.adapt(() -> chunk.parse(file)));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
 
-        // Now load the roads
-        BufferedReader reader = new BufferedReader(new FileReader(roadsFilePath));
-        String line;
+        // Every chunk before the first failed one ran to its end, so its line count is complete
+        int linesBefore = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.error instanceof CsvFormatException) {
+                throw ((CsvFormatException) chunk.error).shifted(linesBefore);
+            } else if (chunk.error != null) {
+                throw chunk.error;
+            }
+            chunk.firstLine = linesBefore;
+            linesBefore += chunk.lines;
+        }
+    }
+
+    // One line-aligned byte range of a file, parsed on its own
+    private abstract static class Chunk {
+        private final long start;
+        private final long end;
+        int lines;      // Lines in the range, blank and comment lines included
+        int firstLine;  // Lines in the file before the range
+        IOException error;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        // Runs on a pool thread; failures are kept for parseAll to report in file order
+        final void parse(Path file) {
+            try (CsvScanner scanner = CsvScanner.open(file, start, end)) {
+                parseRows(scanner);
+                lines = scanner.lineNumber();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        abstract void parseRows(CsvScanner scanner) throws IOException;
+    }
+
+    private static final class IntersectionChunk extends Chunk {
+        final List<Intersection> intersections = new ArrayList<>();
 
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            if (line.isEmpty() || line.startsWith("#")) continue;
+        IntersectionChunk(long start, long end) {
+            super(start, end);
+        }
+
+        @Override
+        void parseRows(CsvScanner scanner) throws IOException {
+            while (scanner.next()) {
+                scanner.requireFields(3);
+                String id = scanner.stringField(0);
+                double x = scanner.doubleField(1);
+                double y = scanner.doubleField(2);
 
-            String[] parts = line.split(",");
-            if (parts.length == 5) {
-                String from = parts[0];
-                String to = parts[1];
-                double length = Double.parseDouble(parts[2]);
-                boolean isBlocked = Boolean.parseBoolean(parts[3]);
-                boolean isOneWay = Boolean.parseBoolean(parts[4]);
+                intersections.add(new Intersection(id, x, y));
+            }
+        }
+    }
 
-                Intersection fromIntersection = cityMap.getIntersectionById(from);
-                Intersection toIntersection = cityMap.getIntersectionById(to);
+    private static final class RoadChunk extends Chunk {
+        private final IdTable<Intersection> ids;
+        final List<Road> roads = new ArrayList<>();
+        int skipped;
+        int firstSkippedLine; // Within the chunk
+
+        RoadChunk(long start, long end, IdTable<Intersection> ids) {
+            super(start, end);
+            this.ids = ids;
+        }
+
+        @Override
+        void parseRows(CsvScanner scanner) throws IOException {
+            while (scanner.next()) {
+                scanner.requireFields(5);
+                Intersection fromIntersection = scanner.lookup(ids, 0);
+                Intersection toIntersection = scanner.lookup(ids, 1);
+                double length = scanner.doubleField(2);
+                boolean isBlocked = scanner.booleanField(3);
+                boolean isOneWay = scanner.booleanField(4);
 
                 if (fromIntersection != null && toIntersection != null) {
-                    Road road = isOneWay
+                    roads.add(isOneWay
                             ? new OneWayRoad(fromIntersection, toIntersection, length, isBlocked)
-                            : new Road(fromIntersection, toIntersection, length, isBlocked);
-
-                    cityMap.addRoad(road);
+                            : new Road(fromIntersection, toIntersection, length, isBlocked));
+                } else if (skipped++ == 0) {
+                    firstSkippedLine = scanner.lineNumber();
                 }
             }
         }
-
-        reader.close();
-        return cityMap;
     }
 }
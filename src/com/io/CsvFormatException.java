@@ -0,0 +1,43 @@
+package com.io;
+
+import java.io.IOException;
+
+/**
+ * A malformed row in one of the CSV files, with the file name and line it was found on.
+ * A chunk parsed on its own counts lines from the start of the chunk; the loader moves
+ * the error to its place in the whole file with {@link #shifted(int)} once the line
+ * counts of the earlier chunks are known.
+ */
+public class CsvFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String fileName;
+    private final int line;
+    private final String reason;
+
+    CsvFormatException(String fileName, int line, String reason) {
+        super(fileName + " line " + line + ": " + reason);
+        this.fileName = fileName;
+        this.line = line;
+        this.reason = reason;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    // The same error, `lines` further down the file
+    CsvFormatException shifted(int lines) {
+        CsvFormatException moved = new CsvFormatException(fileName, line + lines, reason);
+        moved.setStackTrace(getStackTrace());
+        return moved;
+    }
+}
@@ -0,0 +1,300 @@
+package com.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for the simple comma-separated files of this package. The file is read
+ * through a FileChannel into one large reusable buffer and split into rows and fields in place.
+ * Numbers and booleans are parsed straight from the bytes, so a row costs no allocation unless
+ * a caller asks for a field as a String. Blank lines and lines starting with '#' are skipped,
+ * and fields are trimmed of surrounding spaces. Errors name the file and the line.
+ * <p>
+ * A scanner can also cover just a byte range of the file, as split by {@link #chunks}, so
+ * that several threads parse one file. Line numbers then count from the start of the range.
+ */
+final class CsvScanner implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20; // Also the longest line accepted
+    private static final int MAX_FIELDS = 16;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final FileChannel channel;
+    private final String fileName;
+    private long channelPosition; // Next file offset to read
+    private final long end;       // File offset where this scanner's range ends
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int position; // Start of the unread bytes
+    private int limit;    // End of the valid bytes
+    private boolean endOfInput;
+    private int lineNumber;
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private CsvScanner(FileChannel channel, String fileName, long start, long end) {
+        this.channel = channel;
+        this.fileName = fileName;
+        this.channelPosition = start;
+        this.end = end;
+    }
+
+    static CsvScanner open(Path path) throws IOException {
+        return open(path, 0, Long.MAX_VALUE);
+    }
+
+    // Scan only the bytes [start, end) of the file, which should begin and end on line boundaries
+    static CsvScanner open(Path path, long start, long end) throws IOException {
+        return new CsvScanner(FileChannel.open(path, StandardOpenOption.READ), path.getFileName().toString(), start, end);
+    }
+
+    /**
+     * Byte offsets splitting the file into at most `count` ranges of roughly equal size, each
+     * starting at the beginning of a line: range k is [offsets[k], offsets[k + 1]). Ranges
+     * that would be empty because of a long line are dropped.
+     */
+    static long[] chunks(Path path, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer probe = ByteBuffer.allocate(8192);
+            long[] offsets = new long[count + 1];
+            int n = 1; // offsets[0] = 0
+            for (int k = 1; k < count; k++) {
+                long boundary = lineStartAtOrAfter(channel, size * k / count, probe);
+                if (boundary > offsets[n - 1] && boundary < size) {
+                    offsets[n++] = boundary;
+                }
+            }
+            offsets[n++] = size;
+            return Arrays.copyOf(offsets, n);
+        }
+    }
+
+    // Offset of the first line starting at or after `offset`; the file size if there is none
+    private static long lineStartAtOrAfter(FileChannel channel, long offset, ByteBuffer probe) throws IOException {
+        long position = offset - 1; // A newline just before `offset` means a line starts right there
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    // Advance to the next data row; false at the end of the file
+    boolean next() throws IOException {
+        while (true) {
+            int end = findLineEnd();
+            if (end < 0) {
+                return false;
+            }
+            int start = position;
+            position = end < limit ? end + 1 : end; // Step over the newline, if there is one
+            lineNumber++;
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            start = skipSpaces(start, end);
+            if (start == end || bytes[start] == '#') {
+                continue;
+            }
+            split(start, end);
+            return true;
+        }
+    }
+
+    // Index of the newline ending the current line, or `limit` for a last line without one; -1 at the end
+    private int findLineEnd() throws IOException {
+        int scanned = position;
+        while (true) {
+            for (int i = scanned; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            if (endOfInput) {
+                return position < limit ? limit : -1;
+            }
+            scanned = limit - position;
+            fill();
+        }
+    }
+
+    // Move the unread bytes to the front of the buffer and read more behind them
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == bytes.length) {
+            throw error("line longer than " + BUFFER_SIZE + " bytes");
+        }
+        System.arraycopy(bytes, position, bytes, 0, remaining);
+        position = 0;
+        limit = remaining;
+        buffer.clear().position(limit);
+        if (end - channelPosition < buffer.remaining()) {
+            buffer.limit(limit + (int) (end - channelPosition));
+        }
+        int read = buffer.hasRemaining() ? channel.read(buffer, channelPosition) : -1;
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+            channelPosition += read;
+        }
+    }
+
+    private void split(int start, int end) throws IOException {
+        fieldCount = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == ',') {
+                if (fieldCount == MAX_FIELDS) {
+                    throw error("more than " + MAX_FIELDS + " fields");
+                }
+                int from = skipSpaces(fieldStart, i);
+                int to = i;
+                while (to > from && (bytes[to - 1] == ' ' || bytes[to - 1] == '\t')) {
+                    to--;
+                }
+                fieldStarts[fieldCount] = from;
+                fieldEnds[fieldCount] = to;
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+    }
+
+    private int skipSpaces(int from, int to) {
+        while (from < to && (bytes[from] == ' ' || bytes[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    int lineNumber() {
+        return lineNumber;
+    }
+
+    // Fail unless the row has exactly `expected` fields
+    void requireFields(int expected) throws IOException {
+        if (fieldCount != expected) {
+            throw error("expected " + expected + " fields, found " + fieldCount);
+        }
+    }
+
+    // Allocates; meant for values kept for good, like intersection ids
+    String stringField(int field) {
+        return new String(bytes, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+    <V> V lookup(IdTable<V> table, int field) {
+        return table.get(bytes, fieldStarts[field], fieldEnds[field]);
+    }
+
+    /**
+     * Decimal number without going through a String. Plain decimals with up to 15 or so
+     * significant digits, which is what these files hold, are converted with one exact
+     * division and so come out exactly as Double.parseDouble would give them. Anything else
+     * (exponents, long mantissas) falls back to Double.parseDouble.
+     */
+    double doubleField(int field) throws IOException {
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return slowDouble(field);
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return slowDouble(field);
+            }
+        }
+        if (digits == 0) {
+            throw error("'" + stringField(field) + "' is not a number");
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return slowDouble(field);
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int field) throws IOException {
+        String text = stringField(field);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw error("'" + text + "' is not a number");
+        }
+    }
+
+    // "true" or "false" in any case; anything else is an error rather than a silent false
+    boolean booleanField(int field) throws IOException {
+        if (fieldEquals(field, "true")) {
+            return true;
+        } else if (fieldEquals(field, "false")) {
+            return false;
+        }
+        throw error("'" + stringField(field) + "' is not true or false");
+    }
+
+    private boolean fieldEquals(int field, String lowerCase) {
+        int start = fieldStarts[field];
+        if (fieldEnds[field] - start != lowerCase.length()) {
+            return false;
+        }
+        for (int k = 0; k < lowerCase.length(); k++) {
+            if (Character.toLowerCase((char) bytes[start + k]) != lowerCase.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Error for the current line
+    CsvFormatException error(String message) {
+        return new CsvFormatException(fileName, lineNumber, message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.io;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from raw id bytes to a value, so a loader can resolve an id field to
+ * its intersection straight from its read buffer, without building a String per row.
+ */
+final class IdTable<V> {
+    private byte[][] keys = new byte[16][];
+    private Object[] values = new Object[16];
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    V get(byte[] source, int from, int to) {
+        int mask = keys.length - 1;
+        for (int slot = hash(source, from, to) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (Arrays.equals(keys[slot], 0, keys[slot].length, source, from, to)) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    // Add or replace the value for the id bytes source[from, to)
+    void put(byte[] source, int from, int to, V value) {
+        if (2 * (size + 1) > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = hash(source, from, to) & mask;
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (Arrays.equals(keys[slot], 0, keys[slot].length, source, from, to)) {
+                values[slot] = value;
+                return;
+            }
+        }
+        keys[slot] = Arrays.copyOfRange(source, from, to);
+        values[slot] = value;
+        size++;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = hash(oldKeys[i], 0, oldKeys[i].length) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // FNV-1a, then spread so that short ids sharing a prefix do not cluster
+    private static int hash(byte[] source, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ source[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,18 @@
+package com.io;
+
+import java.io.IOException;
+
+/**
+ * Receives the nodes and ways of an OSM file, in file order, from {@link OsmXmlReader} or
+ * {@link OsmPbfReader}. The tags and the refs array are reused for the next element, so a
+ * handler must copy whatever it keeps. Relations are not passed on.
+ */
+interface OsmHandler {
+    // False if node() would ignore every node, so a reader may skip decoding them
+    boolean wantsNodes();
+
+    void node(long id, double lat, double lon, OsmTags tags) throws IOException;
+
+    // refs[0 .. refCount) are the way's node ids in order
+    void way(long id, long[] refs, int refCount, OsmTags tags) throws IOException;
+}
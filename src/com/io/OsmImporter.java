@@ -0,0 +1,321 @@
+package com.io;
+
+import com.model.CityMap;
+import com.model.Intersection;
+import com.model.OneWayRoad;
+import com.model.Road;
+import com.model.TrafficLight;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Imports the drivable road network of an OpenStreetMap extract, XML (.osm) or PBF
+ * (.osm.pbf), into a {@link CityMap}. Ways are split into roads at junctions, so an
+ * intersection is a node shared by several drivable ways, a way's end, or a traffic signal;
+ * the nodes in between only contribute to the road's length. Lengths are great-circle
+ * distances in kilometres, as the rest of the model expects. Intersections are named after
+ * their node id and placed in metres east and south of the map's north-west corner.
+ * One-way ways become {@link OneWayRoad}s (oneway=-1 ones reversed), and intersections at
+ * highway=traffic_signals nodes get a {@link TrafficLight} with the usual timings.
+ * <p>
+ * The file is streamed twice. The first pass collects the node ids of the drivable ways;
+ * the second stores coordinates for those nodes only, in primitive arrays, and builds the
+ * roads as the ways go by. Working memory is therefore about 20 bytes per node on a drivable
+ * road, plus the CityMap itself, however many other nodes the file holds. The second pass needs
+ * the nodes before the ways, the order every OSM extract is published in.
+ */
+public final class OsmImporter {
+    private static final Set<String> DRIVABLE = Set.of(
+            "motorway", "trunk", "primary", "secondary", "tertiary", "unclassified", "residential",
+            "motorway_link", "trunk_link", "primary_link", "secondary_link", "tertiary_link",
+            "living_street", "service", "road");
+    private static final double EARTH_RADIUS_KM = 6371.0088; // Mean radius
+    private static final double E7 = 1e7;                    // Coordinates are kept in 1e-7 degrees
+
+    // Node flags
+    private static final byte JUNCTION = 1;   // On several drivable ways, twice on one, or at a way's end
+    private static final byte LOCATED = 2;    // Coordinates seen in the file
+    private static final byte SIGNAL = 4;     // highway=traffic_signals
+
+    private OsmImporter() {
+    }
+
+    public static CityMap importMap(Path file) throws IOException {
+        NodeCollector collector = new NodeCollector();
+        read(file, collector);
+        MapBuilder builder = new MapBuilder(collector);
+        read(file, builder);
+        return builder.finish();
+    }
+
+    // Usage: OsmImporter <extract.osm.pbf | extract.osm> <output>, writing a city graph file
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: OsmImporter <extract.osm.pbf | extract.osm> <output>");
+            return;
+        }
+        long start = System.nanoTime();
+        CityMap cityMap = importMap(Paths.get(args[0]));
+        CityGraphFile.write(cityMap, Paths.get(args[1]));
+        System.out.println("Imported " + cityMap.getIntersections().size() + " intersections and "
+                + cityMap.getRoads().size() + " roads into " + args[1] + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private static void read(Path file, OsmHandler handler) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".pbf")) {
+            OsmPbfReader.read(file, handler);
+        } else if (name.endsWith(".osm") || name.endsWith(".xml")) {
+            OsmXmlReader.read(file, handler);
+        } else {
+            throw new IllegalArgumentException("Not an OSM file (.osm, .xml or .pbf): " + file);
+        }
+    }
+
+    static boolean isDrivable(OsmTags tags) {
+        String highway = tags.get("highway");
+        return highway != null && DRIVABLE.contains(highway)
+                && !tags.is("area", "yes") && !tags.is("access", "no") && !tags.is("motor_vehicle", "no");
+    }
+
+    // 1 if the way may only be driven in its node order, -1 only against it, 0 both ways
+    static int direction(OsmTags tags) {
+        String oneway = tags.get("oneway");
+        if (oneway != null) {
+            switch (oneway) {
+                case "yes":
+                case "true":
+                case "1":
+                    return 1;
+                case "-1":
+                case "reverse":
+                    return -1;
+                case "no":
+                case "false":
+                case "0":
+                    return 0;
+                default:
+                    break; // e.g. "reversible" or a time condition: both directions at some point
+            }
+        }
+        // Implied one-way
+        return tags.is("junction", "roundabout") || tags.is("junction", "circular") || tags.is("highway", "motorway") ? 1 : 0;
+    }
+
+    // Great-circle distance in kilometres (haversine)
+    static double distance(int lat1, int lon1, int lat2, int lon2) {
+        double phi1 = Math.toRadians(lat1 / E7);
+        double phi2 = Math.toRadians(lat2 / E7);
+        double dPhi = phi2 - phi1;
+        double dLambda = Math.toRadians((lon2 - (double) lon1) / E7);
+        double a = Math.sin(dPhi / 2) * Math.sin(dPhi / 2)
+                + Math.cos(phi1) * Math.cos(phi2) * Math.sin(dLambda / 2) * Math.sin(dLambda / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * First pass: every node id of every drivable way, ends twice, sorted and reduced to the
+     * distinct ids with a junction flag for those seen more than once. A full buffer is first
+     * collapsed to two copies of each id, and only grows if that frees less than a quarter of it.
+     */
+    private static final class NodeCollector implements OsmHandler {
+        private long[] ids = new long[1 << 16];
+        private int count;
+        private byte[] flags; // Set by compact()
+
+        @Override
+        public boolean wantsNodes() {
+            return false;
+        }
+
+        @Override
+        public void node(long id, double lat, double lon, OsmTags tags) {
+        }
+
+        @Override
+        public void way(long id, long[] refs, int refCount, OsmTags tags) {
+            if (refCount < 2 || !isDrivable(tags)) {
+                return;
+            }
+            if (count + refCount + 2 > ids.length) {
+                collapse();
+                if (count + refCount + 2 > ids.length - (ids.length >> 2)) { // Grow only if still 3/4 full
+                    ids = Arrays.copyOf(ids, Math.max(count + refCount + 2, ids.length + (ids.length >> 1)));
+                }
+            }
+            System.arraycopy(refs, 0, ids, count, refCount);
+            count += refCount;
+            ids[count++] = refs[0];            // A way's ends are always intersections
+            ids[count++] = refs[refCount - 1];
+        }
+
+        // Sort and keep at most two copies of each id: enough for compact() to see a junction
+        private void collapse() {
+            Arrays.parallelSort(ids, 0, count);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (kept < 2 || ids[i] != ids[kept - 2]) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            count = kept;
+        }
+
+        // Sort, then collapse duplicates in place, flagging the ids that were seen more than once
+        void compact() {
+            Arrays.parallelSort(ids, 0, count);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    unique++;
+                }
+            }
+            flags = new byte[unique];
+            int u = -1;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[++u] = ids[i];
+                } else {
+                    flags[u] = JUNCTION;
+                }
+            }
+            count = unique;
+            ids = Arrays.copyOf(ids, unique); // The second pass keeps this array throughout
+        }
+    }
+
+    /**
+     * Second pass: coordinates of the collected nodes, then the roads, which are added to the
+     * map as their ways go by. Intersections are created when a road first reaches them.
+     */
+    private static final class MapBuilder implements OsmHandler {
+        private final CityMap cityMap = new CityMap();
+        private final long[] ids;      // Distinct node ids of the drivable ways, ascending
+        private final int size;
+        private final byte[] flags;
+        private final int[] lats;
+        private final int[] lons;
+        private final Intersection[] intersections;
+        private boolean inWays;
+        private int minLat = Integer.MAX_VALUE;
+        private int maxLat = Integer.MIN_VALUE;
+        private int minLon = Integer.MAX_VALUE;
+        private double kmPerLonUnit;   // Projection to metres, fixed once all nodes are in
+
+        MapBuilder(NodeCollector collector) {
+            collector.compact();
+            this.ids = collector.ids;
+            this.size = collector.count;
+            this.flags = collector.flags;
+            this.lats = new int[size];
+            this.lons = new int[size];
+            this.intersections = new Intersection[size];
+        }
+
+        @Override
+        public boolean wantsNodes() {
+            return true;
+        }
+
+        @Override
+        public void node(long id, double lat, double lon, OsmTags tags) throws IOException {
+            if (inWays) {
+                throw new IOException("Node " + id + " comes after the ways; the file must list nodes first");
+            }
+            int node = Arrays.binarySearch(ids, 0, size, id);
+            if (node < 0) {
+                return;
+            }
+            lats[node] = (int) Math.round(lat * E7);
+            lons[node] = (int) Math.round(lon * E7);
+            flags[node] |= LOCATED;
+            if (tags.is("highway", "traffic_signals")) {
+                flags[node] |= SIGNAL;
+            }
+            minLat = Math.min(minLat, lats[node]);
+            maxLat = Math.max(maxLat, lats[node]);
+            minLon = Math.min(minLon, lons[node]);
+        }
+
+        @Override
+        public void way(long id, long[] refs, int refCount, OsmTags tags) throws IOException {
+            if (!inWays) {
+                inWays = true;
+                double midLat = (minLat / E7 + maxLat / E7) / 2;
+                kmPerLonUnit = Math.toRadians(1 / E7) * EARTH_RADIUS_KM * Math.cos(Math.toRadians(midLat));
+            }
+            if (refCount < 2 || !isDrivable(tags)) {
+                return;
+            }
+            int direction = direction(tags);
+
+            int from = -1;     // Node the road being walked starts at
+            int previous = -1;
+            double length = 0;
+            for (int k = 0; k < refCount; k++) {
+                int node = Arrays.binarySearch(ids, 0, size, refs[k]);
+                if (node < 0) {
+                    throw new IOException("Way " + id + " changed between the two passes over the file");
+                }
+                if ((flags[node] & LOCATED) == 0) {
+                    // Clipped off by the extract: end the road at the last node that is in it
+                    if (from >= 0 && previous != from) {
+                        addRoad(from, previous, length, direction);
+                    }
+                    from = -1;
+                } else if (from < 0) {
+                    from = node;
+                    length = 0;
+                } else {
+                    length += distance(lats[previous], lons[previous], lats[node], lons[node]);
+                    if (k == refCount - 1 || (flags[node] & (JUNCTION | SIGNAL)) != 0) {
+                        addRoad(from, node, length, direction);
+                        from = node;
+                        length = 0;
+                    }
+                }
+                previous = node;
+            }
+        }
+
+        private void addRoad(int from, int to, double length, int direction) {
+            if (from == to && length == 0) {
+                return; // A node repeated back to back
+            }
+            Intersection a = intersection(from);
+            Intersection b = intersection(to);
+            if (direction > 0) {
+                cityMap.addRoad(new OneWayRoad(a, b, length, false));
+            } else if (direction < 0) {
+                cityMap.addRoad(new OneWayRoad(b, a, length, false));
+            } else {
+                cityMap.addRoad(new Road(a, b, length, false));
+            }
+        }
+
+        private Intersection intersection(int node) {
+            if (intersections[node] == null) {
+                double x = (lons[node] - (double) minLon) * kmPerLonUnit * 1000;
+                double y = (maxLat - (double) lats[node]) * Math.toRadians(1 / E7) * EARTH_RADIUS_KM * 1000;
+                intersections[node] = new Intersection(Long.toString(ids[node]), x, y);
+                cityMap.addIntersection(intersections[node]);
+            }
+            return intersections[node];
+        }
+
+        CityMap finish() {
+            for (int node = 0; node < size; node++) {
+                if ((flags[node] & SIGNAL) != 0 && intersections[node] != null) {
+                    intersections[node].setTrafficLight(new TrafficLight(TrafficLightLoader.GREEN_DURATION,
+                            TrafficLightLoader.YELLOW_DURATION, TrafficLightLoader.RED_DURATION));
+                }
+            }
+            return cityMap;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streams the nodes and ways of an OSM PBF file (.osm.pbf) to an {@link OsmHandler}. The file
+ * is a sequence of blobs of at most 32 MiB, each a zlib-compressed protobuf block of a few
+ * thousand elements, and only one block is held at a time. The few protobuf messages of the
+ * format are decoded by hand with {@link Proto}, which needs no generated code. Uncompressed
+ * and zlib blobs are supported, as are plain and dense nodes; LZMA and zstd blobs are not.
+ */
+final class OsmPbfReader {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private final OsmHandler handler;
+    private final boolean wantsNodes;
+    private final OsmTags tags = new OsmTags();
+    private final Inflater inflater = new Inflater();
+    private byte[] header = new byte[256];
+    private byte[] blob = new byte[1 << 16];
+    private byte[] data = new byte[1 << 16];
+    private long[] refs = new long[256];
+    private String[] strings = new String[256]; // String table of the current block
+    private int[] groupStarts = new int[16];
+    private int[] groupEnds = new int[16];
+
+    private OsmPbfReader(OsmHandler handler) {
+        this.handler = handler;
+        this.wantsNodes = handler.wantsNodes();
+    }
+
+    static void read(Path file, OsmHandler handler) throws IOException {
+        OsmPbfReader reader = new OsmPbfReader(handler);
+        try {
+            reader.readFile(file);
+        } finally {
+            reader.inflater.end();
+        }
+    }
+
+    private void readFile(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            long offset = 0;
+            while (true) {
+                int first = in.read();
+                if (first < 0) {
+                    return;
+                }
+                int headerSize = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedShort());
+                if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE) {
+                    throw error(file, offset, "blob header of " + headerSize + " bytes");
+                }
+                header = ensure(header, headerSize);
+                in.readFully(header, 0, headerSize);
+
+                String type = null;
+                int blobSize = -1;
+                Proto blobHeader = new Proto(header, 0, headerSize);
+                while (blobHeader.hasMore()) {
+                    int tag = blobHeader.tag();
+                    if (tag == (1 << 3 | 2)) {
+                        type = blobHeader.string();
+                    } else if (tag == (3 << 3)) {
+                        blobSize = (int) blobHeader.varint();
+                    } else {
+                        blobHeader.skip(tag);
+                    }
+                }
+                if (type == null || blobSize < 0 || blobSize > MAX_BLOB_SIZE) {
+                    throw error(file, offset, "invalid blob header");
+                }
+                blob = ensure(blob, blobSize);
+                in.readFully(blob, 0, blobSize);
+
+                if (type.equals("OSMHeader")) {
+                    checkFeatures(decompress(blobSize, file, offset), file);
+                } else if (type.equals("OSMData")) {
+                    readBlock(decompress(blobSize, file, offset));
+                } // Other blob types are to be skipped, says the format
+                offset += 4 + headerSize + blobSize;
+            }
+        } catch (EOFException e) {
+            throw new IOException(file.getFileName() + " ends in the middle of a blob", e);
+        }
+    }
+
+    // The block inside the blob just read, raw or inflated into `data`
+    private Proto decompress(int blobSize, Path file, long offset) throws IOException {
+        Proto message = new Proto(blob, 0, blobSize);
+        int rawSize = -1;
+        int zlibStart = -1;
+        int zlibEnd = -1;
+        while (message.hasMore()) {
+            int tag = message.tag();
+            int field = tag >>> 3;
+            if (field == 1 && (tag & 7) == 2) {
+                return message.message(); // Stored uncompressed
+            } else if (field == 2 && (tag & 7) == 0) {
+                rawSize = (int) message.varint();
+            } else if (field == 3 && (tag & 7) == 2) {
+                Proto zlib = message.message();
+                zlibStart = zlib.position;
+                zlibEnd = zlib.limit;
+            } else if (field >= 4 && field <= 7) {
+                throw error(file, offset, "unsupported compression (blob field " + field + ")");
+            } else {
+                message.skip(tag);
+            }
+        }
+        if (zlibStart < 0 || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw error(file, offset, "blob has no data");
+        }
+
+        data = ensure(data, rawSize);
+        inflater.reset();
+        inflater.setInput(blob, zlibStart, zlibEnd - zlibStart);
+        try {
+            int inflated = 0;
+            while (inflated < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(data, inflated, rawSize - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != rawSize) {
+                throw error(file, offset, "inflates to " + inflated + " bytes instead of " + rawSize);
+            }
+        } catch (DataFormatException e) {
+            throw error(file, offset, "corrupt zlib data: " + e.getMessage());
+        }
+        return new Proto(data, 0, rawSize);
+    }
+
+    // HeaderBlock: refuse files that need a feature this reader does not have, e.g. history
+    private static void checkFeatures(Proto headerBlock, Path file) throws IOException {
+        while (headerBlock.hasMore()) {
+            int tag = headerBlock.tag();
+            if (tag == (4 << 3 | 2)) {
+                String feature = headerBlock.string();
+                if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes")) {
+                    throw new IOException(file.getFileName() + " requires unsupported feature " + feature);
+                }
+            } else {
+                headerBlock.skip(tag);
+            }
+        }
+    }
+
+    // PrimitiveBlock: the string table and coordinate scaling can follow the groups, so find them first
+    private void readBlock(Proto block) throws IOException {
+        int stringCount = 0;
+        int groupCount = 0;
+        long granularity = 100;
+        long latOffset = 0;
+        long lonOffset = 0;
+        while (block.hasMore()) {
+            int tag = block.tag();
+            switch (tag) {
+                case 1 << 3 | 2: {
+                    Proto table = block.message();
+                    while (table.hasMore()) {
+                        int entry = table.tag();
+                        if (entry == (1 << 3 | 2)) {
+                            if (stringCount == strings.length) {
+                                strings = Arrays.copyOf(strings, stringCount * 2);
+                            }
+                            strings[stringCount++] = table.string();
+                        } else {
+                            table.skip(entry);
+                        }
+                    }
+                    break;
+                }
+                case 2 << 3 | 2: {
+                    Proto group = block.message();
+                    if (groupCount == groupStarts.length) {
+                        groupStarts = Arrays.copyOf(groupStarts, groupCount * 2);
+                        groupEnds = Arrays.copyOf(groupEnds, groupCount * 2);
+                    }
+                    groupStarts[groupCount] = group.position;
+                    groupEnds[groupCount] = group.limit;
+                    groupCount++;
+                    break;
+                }
+                case 17 << 3:
+                    granularity = block.varint();
+                    break;
+                case 19 << 3:
+                    latOffset = block.varint();
+                    break;
+                case 20 << 3:
+                    lonOffset = block.varint();
+                    break;
+                default:
+                    block.skip(tag);
+                    break;
+            }
+        }
+
+        for (int g = 0; g < groupCount; g++) {
+            Proto group = new Proto(block.buffer, groupStarts[g], groupEnds[g]);
+            while (group.hasMore()) {
+                int tag = group.tag();
+                if (tag == (1 << 3 | 2) && wantsNodes) {
+                    readNode(group.message(), stringCount, granularity, latOffset, lonOffset);
+                } else if (tag == (2 << 3 | 2) && wantsNodes) {
+                    readDenseNodes(group.message(), stringCount, granularity, latOffset, lonOffset);
+                } else if (tag == (3 << 3 | 2)) {
+                    readWay(group.message(), stringCount);
+                } else {
+                    group.skip(tag); // Relations, changesets, and nodes nobody asked for
+                }
+            }
+        }
+    }
+
+    private void readNode(Proto node, int stringCount, long granularity, long latOffset, long lonOffset) throws IOException {
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        Proto keys = null;
+        Proto values = null;
+        while (node.hasMore()) {
+            int tag = node.tag();
+            switch (tag) {
+                case 1 << 3:
+                    id = node.sint();
+                    break;
+                case 2 << 3 | 2:
+                    keys = node.message();
+                    break;
+                case 3 << 3 | 2:
+                    values = node.message();
+                    break;
+                case 8 << 3:
+                    lat = node.sint();
+                    break;
+                case 9 << 3:
+                    lon = node.sint();
+                    break;
+                default:
+                    node.skip(tag);
+                    break;
+            }
+        }
+        readTags(keys, values, stringCount);
+        handler.node(id, 1e-9 * (latOffset + granularity * lat), 1e-9 * (lonOffset + granularity * lon), tags);
+    }
+
+    // Ids and coordinates are delta coded; keys_vals holds key, value index pairs, each node's ending in a 0
+    private void readDenseNodes(Proto dense, int stringCount, long granularity, long latOffset, long lonOffset) throws IOException {
+        Proto ids = null;
+        Proto lats = null;
+        Proto lons = null;
+        Proto keysValues = null;
+        while (dense.hasMore()) {
+            int tag = dense.tag();
+            switch (tag) {
+                case 1 << 3 | 2:
+                    ids = dense.message();
+                    break;
+                case 8 << 3 | 2:
+                    lats = dense.message();
+                    break;
+                case 9 << 3 | 2:
+                    lons = dense.message();
+                    break;
+                case 10 << 3 | 2:
+                    keysValues = dense.message();
+                    break;
+                default:
+                    dense.skip(tag);
+                    break;
+            }
+        }
+        if (ids == null) {
+            return;
+        }
+        if (lats == null || lons == null) {
+            throw new IOException("Dense nodes without coordinates");
+        }
+
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        while (ids.hasMore()) {
+            id += ids.sint();
+            lat += lats.sint();
+            lon += lons.sint();
+            tags.clear();
+            if (keysValues != null) {
+                while (keysValues.hasMore()) {
+                    int key = (int) keysValues.varint();
+                    if (key == 0) {
+                        break;
+                    }
+                    tags.add(string(key, stringCount), string((int) keysValues.varint(), stringCount));
+                }
+            }
+            handler.node(id, 1e-9 * (latOffset + granularity * lat), 1e-9 * (lonOffset + granularity * lon), tags);
+        }
+    }
+
+    private void readWay(Proto way, int stringCount) throws IOException {
+        long id = 0;
+        Proto keys = null;
+        Proto values = null;
+        int refCount = 0;
+        while (way.hasMore()) {
+            int tag = way.tag();
+            switch (tag) {
+                case 1 << 3:
+                    id = way.varint();
+                    break;
+                case 2 << 3 | 2:
+                    keys = way.message();
+                    break;
+                case 3 << 3 | 2:
+                    values = way.message();
+                    break;
+                case 8 << 3 | 2: {
+                    Proto packed = way.message();
+                    long ref = 0;
+                    while (packed.hasMore()) {
+                        ref += packed.sint();
+                        if (refCount == refs.length) {
+                            refs = Arrays.copyOf(refs, refCount * 2);
+                        }
+                        refs[refCount++] = ref;
+                    }
+                    break;
+                }
+                default:
+                    way.skip(tag);
+                    break;
+            }
+        }
+        readTags(keys, values, stringCount);
+        handler.way(id, refs, refCount, tags);
+    }
+
+    // Parallel packed lists of string table indices
+    private void readTags(Proto keys, Proto values, int stringCount) throws IOException {
+        tags.clear();
+        if (keys == null || values == null) {
+            return;
+        }
+        while (keys.hasMore() && values.hasMore()) {
+            tags.add(string((int) keys.varint(), stringCount), string((int) values.varint(), stringCount));
+        }
+    }
+
+    private String string(int index, int stringCount) throws IOException {
+        if (index < 0 || index >= stringCount) {
+            throw new IOException("String index " + index + " outside a table of " + stringCount);
+        }
+        return strings[index];
+    }
+
+    private static byte[] ensure(byte[] buffer, int size) {
+        return buffer.length >= size ? buffer : new byte[Math.max(size, buffer.length * 2)];
+    }
+
+    private static IOException error(Path file, long offset, String message) {
+        return new IOException(file.getFileName() + " blob at byte " + offset + ": " + message);
+    }
+
+    /**
+     * Cursor over one protobuf message in a byte array: varints, zigzag varints, and
+     * length-delimited fields, which come back as cursors of their own.
+     */
+    private static final class Proto {
+        final byte[] buffer;
+        int position;
+        final int limit;
+
+        Proto(byte[] buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return position < limit;
+        }
+
+        // Field number << 3 | wire type
+        int tag() throws IOException {
+            return (int) varint();
+        }
+
+        long varint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new IOException("Truncated protobuf varint");
+                }
+                byte b = buffer[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed protobuf varint");
+        }
+
+        long sint() throws IOException {
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        Proto message() throws IOException {
+            long length = varint();
+            if (length < 0 || length > limit - position) {
+                throw new IOException("Protobuf field runs past its message");
+            }
+            Proto inner = new Proto(buffer, position, position + (int) length);
+            position += (int) length;
+            return inner;
+        }
+
+        String string() throws IOException {
+            Proto bytes = message();
+            return new String(buffer, bytes.position, bytes.limit - bytes.position, StandardCharsets.UTF_8);
+        }
+
+        void skip(int tag) throws IOException {
+            switch (tag & 7) {
+                case 0:
+                    varint();
+                    break;
+                case 1:
+                    advance(8);
+                    break;
+                case 2:
+                    message();
+                    break;
+                case 5:
+                    advance(4);
+                    break;
+                default:
+                    throw new IOException("Unsupported protobuf wire type " + (tag & 7));
+            }
+        }
+
+        private void advance(int bytes) throws IOException {
+            if (bytes > limit - position) {
+                throw new IOException("Protobuf field runs past its message");
+            }
+            position += bytes;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.io;
+
+import java.util.Arrays;
+
+/**
+ * The tags of the OSM element being read, reused from one element to the next. Elements
+ * rarely carry more than a dozen tags, so lookups are a linear scan.
+ */
+final class OsmTags {
+    private String[] keys = new String[16];
+    private String[] values = new String[16];
+    private int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(String key, String value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    // Value of the tag, or null if the element does not have it
+    String get(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    boolean is(String key, String value) {
+        return value.equals(get(key));
+    }
+}
@@ -0,0 +1,144 @@
+package com.io;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Streams the nodes and ways of an OSM XML file (.osm) to an {@link OsmHandler} with a StAX
+ * pull parser, so memory stays flat however large the file is. DTDs and external entities
+ * are disabled.
+ */
+final class OsmXmlReader {
+    private static final int NONE = 0;
+    private static final int NODE = 1;
+    private static final int WAY = 2;
+    private static final int OTHER = 3; // A relation, whose members and tags are ignored
+
+    private OsmXmlReader() {
+    }
+
+    static void read(Path file, OsmHandler handler) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                read(xml, handler, file);
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(file.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void read(XMLStreamReader xml, OsmHandler handler, Path file) throws XMLStreamException, IOException {
+        boolean wantsNodes = handler.wantsNodes();
+        OsmTags tags = new OsmTags();
+        long[] refs = new long[256];
+        int refCount = 0;
+        int element = NONE;
+        long id = 0;
+        double lat = 0;
+        double lon = 0;
+
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (xml.getLocalName()) {
+                    case "node":
+                        element = NODE;
+                        tags.clear();
+                        if (wantsNodes) {
+                            id = longAttribute(xml, "id", file);
+                            lat = doubleAttribute(xml, "lat", file);
+                            lon = doubleAttribute(xml, "lon", file);
+                        }
+                        break;
+                    case "way":
+                        element = WAY;
+                        tags.clear();
+                        refCount = 0;
+                        id = longAttribute(xml, "id", file);
+                        break;
+                    case "nd":
+                        if (element == WAY) {
+                            if (refCount == refs.length) {
+                                refs = Arrays.copyOf(refs, refCount * 2);
+                            }
+                            refs[refCount++] = longAttribute(xml, "ref", file);
+                        }
+                        break;
+                    case "tag":
+                        if (element == WAY || (element == NODE && wantsNodes)) {
+                            tags.add(attribute(xml, "k", file), attribute(xml, "v", file));
+                        }
+                        break;
+                    case "relation":
+                        element = OTHER;
+                        break;
+                    default:
+                        break;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                switch (xml.getLocalName()) {
+                    case "node":
+                        if (wantsNodes) {
+                            handler.node(id, lat, lon, tags);
+                        }
+                        element = NONE;
+                        break;
+                    case "way":
+                        handler.way(id, refs, refCount, tags);
+                        element = NONE;
+                        break;
+                    case "relation":
+                        element = NONE;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private static String attribute(XMLStreamReader xml, String name, Path file) throws IOException {
+        String value = xml.getAttributeValue(null, name);
+        if (value == null) {
+            throw error(xml, file, "<" + xml.getLocalName() + "> has no " + name);
+        }
+        return value;
+    }
+
+    private static long longAttribute(XMLStreamReader xml, String name, Path file) throws IOException {
+        String value = attribute(xml, name, file);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw error(xml, file, name + " '" + value + "' is not an integer");
+        }
+    }
+
+    private static double doubleAttribute(XMLStreamReader xml, String name, Path file) throws IOException {
+        String value = attribute(xml, name, file);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw error(xml, file, name + " '" + value + "' is not a number");
+        }
+    }
+
+    private static IOException error(XMLStreamReader xml, Path file, String message) {
+        return new IOException(file.getFileName() + " line " + xml.getLocation().getLineNumber() + ": " + message);
+    }
+}
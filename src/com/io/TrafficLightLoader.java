@@ -7,9 +7,9 @@ import java.io.IOException;
 public class TrafficLightLoader {
 
     // Constant durations for all traffic lights
-    private static final int GREEN_DURATION = 30;  // 30 seconds for green
-    private static final int YELLOW_DURATION = 5;  // 5 seconds for yellow
-    private static final int RED_DURATION = 45;    // 45 seconds for red
+    static final int GREEN_DURATION = 30;  // 30 seconds for green
+    static final int YELLOW_DURATION = 5;  // 5 seconds for yellow
+    static final int RED_DURATION = 45;    // 45 seconds for red
 
     public static void loadTrafficLightsFromCSV(String filePath, CityMap cityMap) throws IOException {
         BufferedReader reader = new BufferedReader(new FileReader(filePath));
@@ -9,6 +9,8 @@ public class CityMap {
     // Method to add a road to the city map
     public void addRoad(Road road) {
         roads.add(road);
+        road.getSource().addConnectedRoad(road);
+        road.getDestination().addConnectedRoad(road);
     }
 
     // Method to add an intersection to the map
@@ -16,6 +18,11 @@ public class CityMap {
         intersections.put(id, new Intersection(id, x, y));
     }
 
+    // Method to add an intersection built elsewhere, e.g. by a loader
+    public void addIntersection(Intersection intersection) {
+        intersections.put(intersection.getId(), intersection);
+    }
+
     // Method to get an intersection by its name (new method)
     public Intersection getIntersectionByName(String name) {
         for (Intersection intersection : intersections.values()) {
@@ -23,6 +23,10 @@ public class Intersection {
 
     public void setTrafficLight(TrafficLight trafficLight) {
         this.trafficLight = trafficLight;
+        // The light penalty is part of every connected road's weight
+        for (Road road : connectedRoads) {
+            road.weightChanged();
+        }
     }
 
     public TrafficLight getTrafficLight() {
@@ -13,8 +13,8 @@ public class OneWayRoad extends Road {
     }
 
     @Override
-    public double calculateWeight() {
-        if (isBlocked) {
+    public double calculateWeight(boolean reverse) {
+        if (isBlocked || reverse) { // Driving against the direction of travel is not allowed
             return Double.POSITIVE_INFINITY;
         }
 
@@ -3,15 +3,20 @@ package com.model;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Road {
     private static final double SCALE_FACTOR = 2.5;
+    private static final AtomicLong WEIGHT_EPOCH = new AtomicLong(); // Bumped on every weight change of any road
     private boolean highlighted;
     protected Intersection source;
     protected Intersection destination;
     protected double length;
     protected boolean isBlocked;
-    protected int vehicleCount;
+    protected int vehicleCount;        // Vehicles travelling source -> destination
+    protected int reverseVehicleCount; // Vehicles travelling destination -> source, always 0 on one-way roads
     protected String style;  // New property to store the style of the road
+    private volatile long weightVersion; // Epoch of the last change that affected calculateWeight()
 
     public Road(Intersection source, Intersection destination, double length, boolean isBlocked) {
         this.source = source;
@@ -19,8 +24,10 @@ public class Road {
         this.length = length;
         this.isBlocked = isBlocked;
         this.vehicleCount = 0;
+        this.reverseVehicleCount = 0;
         this.style = ""; // Default style is an empty string (no style)
         this.highlighted = false;
+        this.weightVersion = WEIGHT_EPOCH.incrementAndGet();
     }
 
     public Intersection getSource() {
@@ -43,26 +50,149 @@ public class Road {
         return isBlocked;
     }
 
+    public void setBlocked(boolean blocked) {
+        if (this.isBlocked != blocked) {
+            this.isBlocked = blocked;
+            weightChanged();
+        }
+    }
+
+    // Where a vehicle leaves the road: the destination, or the source when travelling in reverse
+    public Intersection getExit(boolean reverse) {
+        return reverse ? source : destination;
+    }
+
+    // Where a vehicle joins the road: the source, or the destination when travelling in reverse
+    public Intersection getEntry(boolean reverse) {
+        return reverse ? destination : source;
+    }
+
+    // The end of the road opposite to `end`, e.g. where a vehicle entering at `end` comes out
+    public Intersection otherEnd(Intersection end) {
+        if (end == source) {
+            return destination;
+        } else if (end == destination) {
+            return source;
+        }
+        throw new IllegalArgumentException(end + " is not an end of road " + this);
+    }
+
+    // Vehicles travelling source -> destination
     public int getVehicleCount() {
         return vehicleCount;
     }
 
+    // Vehicles travelling in one direction; reverse means destination -> source
+    public int getVehicleCount(boolean reverse) {
+        return reverse ? reverseVehicleCount : vehicleCount;
+    }
+
+    // Vehicles in both directions
+    public int getTotalVehicleCount() {
+        return vehicleCount + reverseVehicleCount;
+    }
+
     public void addVehicle() {
-        this.vehicleCount++;
+        addVehicles(1, false);
+    }
+
+    public void addVehicle(boolean reverse) {
+        addVehicles(1, reverse);
     }
 
     public void removeVehicle() {
-        if (this.vehicleCount > 0) {
-            this.vehicleCount--;
+        removeVehicles(1, false);
+    }
+
+    public void removeVehicle(boolean reverse) {
+        removeVehicles(1, reverse);
+    }
+
+    // Add several vehicles at once; one weight change instead of one per vehicle
+    public void addVehicles(int count) {
+        addVehicles(count, false);
+    }
+
+    public void addVehicles(int count, boolean reverse) {
+        if (count > 0) {
+            if (reverse) {
+                checkTwoWay();
+                this.reverseVehicleCount += count;
+            } else {
+                this.vehicleCount += count;
+            }
+            weightChanged();
+        }
+    }
+
+    // Remove up to count vehicles at once, never going below zero
+    public void removeVehicles(int count) {
+        removeVehicles(count, false);
+    }
+
+    public void removeVehicles(int count, boolean reverse) {
+        int removed = Math.min(count, getVehicleCount(reverse));
+        if (removed > 0) {
+            if (reverse) {
+                this.reverseVehicleCount -= removed;
+            } else {
+                this.vehicleCount -= removed;
+            }
+            weightChanged();
+        }
+    }
+
+    private void checkTwoWay() {
+        if (isOneWay()) {
+            throw new IllegalArgumentException("One-way road " + this + " cannot be travelled in reverse");
+        }
+    }
+
+    // Put the road back into a saved traffic state; one weight change for all fields
+    public void restoreState(int vehicleCount, int reverseVehicleCount, boolean blocked) {
+        if (vehicleCount < 0 || reverseVehicleCount < 0) {
+            throw new IllegalArgumentException("Negative vehicle count " + vehicleCount + "/" + reverseVehicleCount
+                    + " on road " + this);
+        }
+        if (reverseVehicleCount > 0) {
+            checkTwoWay();
+        }
+        if (this.vehicleCount != vehicleCount || this.reverseVehicleCount != reverseVehicleCount
+                || this.isBlocked != blocked) {
+            this.vehicleCount = vehicleCount;
+            this.reverseVehicleCount = reverseVehicleCount;
+            this.isBlocked = blocked;
+            weightChanged();
         }
     }
 
+    // Stamp this road with a fresh epoch so caches can tell its weight changed
+    protected void weightChanged() {
+        this.weightVersion = WEIGHT_EPOCH.incrementAndGet();
+    }
+
+    // Epoch at which calculateWeight() last changed for this road
+    public long getWeightVersion() {
+        return weightVersion;
+    }
+
+    // Latest weight epoch across all roads; unchanged epoch means no weight changed anywhere
+    public static long currentWeightEpoch() {
+        return WEIGHT_EPOCH.get();
+    }
+
+    // Weight of travelling source -> destination
     public double calculateWeight() {
+        return calculateWeight(false);
+    }
+
+    // Weight of travelling in one direction; each direction is slowed only by its own traffic
+    public double calculateWeight(boolean reverse) {
         if (isBlocked) {
             return Double.POSITIVE_INFINITY;
         }
 
-        double trafficFactor = 1 + (vehicleCount / 10.0);
+        double trafficFactor = 1 + (getVehicleCount(reverse) / 10.0);
 
 
         double trafficLightFactor = 1.0;
@@ -110,8 +240,10 @@ public class Road {
 
     public void reset() {
         this.isBlocked = false; // Reset the blocked status
-        this.vehicleCount = 0;   // Reset the vehicle count
+        this.vehicleCount = 0;   // Reset the vehicle counts
+        this.reverseVehicleCount = 0;
         this.style = "";         // Reset the style
+        weightChanged();
     }
 
     public Paint getStyleColor() {
@@ -122,8 +254,8 @@ public class Road {
 
             return Color.web("#00AD83");
         }
-        // Adjust color based on vehicle count
-        int vehicleCount = getVehicleCount();
+        // Adjust color based on the busier direction
+        int vehicleCount = Math.max(this.vehicleCount, reverseVehicleCount);
         if (vehicleCount < 15) {
             return Color.web("#9ca3af"); // Light gray for low traffic
         } else if (vehicleCount < 60) {
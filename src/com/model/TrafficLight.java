@@ -1,5 +1,14 @@
 package com.model;
 
+import java.util.List;
+
+/**
+ * A fixed-cycle traffic light. The phase is a pure function of time: at absolute simulation
+ * time t the light is at position (t + offset) mod cycle, where the cycle runs green, then
+ * yellow, then red. Any light can therefore be queried at any past or future time in O(1),
+ * and nothing has to step it forward. update() only advances the light's own clock, which
+ * backs the "current" getters.
+ */
 public class TrafficLight {
     public enum State {
         GREEN,
@@ -7,66 +16,117 @@ public class TrafficLight {
         RED
     }
 
-    private State currentState;
     private int greenDuration;  // How long the light stays green (in time units)
     private int yellowDuration; // How long the light stays yellow (in time units)
     private int redDuration;    // How long the light stays red (in time units)
-    private int currentTime;    // Current time within the cycle
+    private int offset;         // Position in the cycle at time 0, e.g. for green waves
+    private int shift;          // Manual adjustments made by toggle(), cleared by reset()
+    private int currentTime;    // The light's own clock, advanced by update()
 
     public TrafficLight(int greenDuration, int yellowDuration, int redDuration) {
+        this(greenDuration, yellowDuration, redDuration, 0);
+    }
+
+    public TrafficLight(int greenDuration, int yellowDuration, int redDuration, int offset) {
         this.greenDuration = greenDuration;
         this.yellowDuration = yellowDuration;
         this.redDuration = redDuration;
+        this.offset = offset;
         this.currentTime = 0;
-        this.currentState = State.GREEN; // Starts as green by default
     }
 
     // Update the traffic light's state (simulate time passing)
     public void update() {
         currentTime++;
+    }
 
-        int cycle = greenDuration + yellowDuration + redDuration;
-        int timeInCycle = currentTime % cycle;
+    // Position within the cycle at absolute time `time`, in [0, cycle)
+    public double cyclePositionAt(double time) {
+        int cycle = getCycleDuration();
+        if (cycle <= 0) {
+            return 0.0;
+        }
+        double position = (time + offset + shift) % cycle;
+        return position < 0 ? position + cycle : position;
+    }
 
-        // Manage the state based on the time in the cycle
-        if (timeInCycle < greenDuration) {
-            currentState = State.GREEN;
-        } else if (timeInCycle < greenDuration + yellowDuration) {
-            currentState = State.YELLOW;
+    public State stateAt(double time) {
+        double position = cyclePositionAt(time);
+        if (position < greenDuration) {
+            return State.GREEN;
+        } else if (position < greenDuration + yellowDuration) {
+            return State.YELLOW;
         } else {
-            currentState = State.RED;
+            return State.RED;
         }
     }
 
+    // Time from `time` until the light leaves the state it is in at that moment
+    public double timeLeftAt(double time) {
+        double position = cyclePositionAt(time);
+        if (position < greenDuration) {
+            return greenDuration - position;
+        } else if (position < greenDuration + yellowDuration) {
+            return greenDuration + yellowDuration - position;
+        } else {
+            return getCycleDuration() - position;
+        }
+    }
+
+    /**
+     * How long a vehicle arriving at absolute time `time` waits before it may cross. Only red
+     * stops traffic, and a vehicle arriving on red leaves when the next green starts. Arriving
+     * later therefore never means leaving earlier (FIFO).
+     */
+    public double waitTimeAt(double time) {
+        return stateAt(time) == State.RED ? timeLeftAt(time) : 0.0;
+    }
+
+    // Same wait for a vehicle arriving `delay` time units after the light's current time
+    public double waitTimeAfter(double delay) {
+        return waitTimeAt(currentTime + delay);
+    }
+
+    public State getState() {
+        return stateAt(currentTime);
+    }
+
     // Check if the light is currently green
     public boolean isGreen() {
-        return currentState == State.GREEN;
+        return getState() == State.GREEN;
     }
 
     // Check if the light is currently yellow
     public boolean isYellow() {
-        return currentState == State.YELLOW;
+        return getState() == State.YELLOW;
     }
 
     // Check if the light is currently red
     public boolean isRed() {
-        return currentState == State.RED;
+        return getState() == State.RED;
     }
 
-    // Toggle the traffic light between GREEN and RED states
+    // Toggle the traffic light between GREEN and RED by jumping to the start of the other phase
     public void toggle() {
-        if (currentState == State.GREEN) {
-            currentState = State.RED;
-        } else if (currentState == State.RED) {
-            currentState = State.GREEN;
+        State state = getState();
+        int target;
+        if (state == State.GREEN) {
+            target = greenDuration + yellowDuration;
+        } else if (state == State.RED) {
+            target = 0;
+        } else {
+            return;
+        }
+        int cycle = getCycleDuration();
+        if (cycle > 0) {
+            shift = Math.floorMod(target - currentTime - offset, cycle);
         }
-        currentTime = 0; // Reset the timer when toggling
     }
 
     // Reset the traffic light to the beginning of its cycle
     public void reset() {
         currentTime = 0;
-        currentState = State.GREEN; // Default start state
+        shift = 0;
     }
 
     // Getters and setters for the durations
@@ -94,25 +154,51 @@ public class TrafficLight {
         this.redDuration = redDuration;
     }
 
+    public int getCycleDuration() {
+        return greenDuration + yellowDuration + redDuration;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    // Phase adjustment left by toggle(); saved and restored with snapshots
+    public int getShift() {
+        return shift;
+    }
+
+    public void setShift(int shift) {
+        this.shift = shift;
+    }
+
+    public int getCurrentTime() {
+        return currentTime;
+    }
+
+    // Move the light's own clock to an absolute time, e.g. to sync it with a simulation
+    public void setCurrentTime(int currentTime) {
+        this.currentTime = currentTime;
+    }
+
     // Override toString to provide more information
     @Override
     public String toString() {
-        return String.format("%s (Green: %d, Yellow: %d, Red: %d)", currentState.name(),
+        return String.format("%s (Green: %d, Yellow: %d, Red: %d)", getState().name(),
                 greenDuration, yellowDuration, redDuration);
     }
 
     // Optionally, to get the time left in the current state
     public int timeLeftInCurrentState() {
-        int cycle = greenDuration + yellowDuration + redDuration;
-        int timeInCycle = currentTime % cycle;
+        return (int) timeLeftAt(currentTime);
+    }
 
-        if (currentState == State.GREEN) {
-            return greenDuration - timeInCycle;
-        } else if (currentState == State.YELLOW) {
-            return yellowDuration - (timeInCycle - greenDuration);
-        } else {
-            return redDuration - (timeInCycle - (greenDuration + yellowDuration));
-        }
+    // Position within the cycle right now
+    public int cyclePosition() {
+        return (int) cyclePositionAt(currentTime);
     }
 
     // Optionally, change the entire cycle duration dynamically
@@ -122,4 +208,64 @@ public class TrafficLight {
         this.redDuration = red;
         this.reset(); // Reset after changing the cycle
     }
+
+    /**
+     * Give the lights along a corridor offsets for a green wave: a platoon that leaves the first
+     * road at the start of green, driving at `speedKmh`, reaches every later light just as it
+     * turns green. The first light keeps its offset. Lights on the corridor should share one
+     * cycle length, or the wave only holds for the first cycle. Two-way roads may be listed in
+     * either direction; the corridor runs the way consecutive roads connect. Returns how many
+     * lights were set.
+     */
+    public static int coordinateCorridor(List<Road> corridor, double speedKmh) {
+        TrafficLight lead = null;
+        double leadStart = 0.0; // Absolute time at which the lead light's green starts
+        double travelTime = 0.0;
+        int coordinated = 0;
+        Intersection at = corridorStart(corridor);
+
+        for (int i = 0; i < corridor.size(); i++) {
+            Road road = corridor.get(i);
+            if (i == 0 && at.hasTrafficLight()) {
+                lead = at.getTrafficLight();
+                leadStart = -lead.cyclePositionAt(0);
+            }
+            travelTime += road.getLength() / speedKmh * 3600;
+            at = road.otherEnd(at);
+
+            TrafficLight light = at.getTrafficLight();
+            if (light == null || light.getCycleDuration() <= 0) continue;
+            if (lead == null) {
+                // No light at the corridor start: the first light on it sets the reference
+                lead = light;
+                leadStart = -light.cyclePositionAt(0) - travelTime;
+                continue;
+            }
+            // Position 0 (green start) at time leadStart + travelTime
+            long arrival = Math.round(leadStart + travelTime);
+            light.shift = 0;
+            light.offset = (int) Math.floorMod(-arrival, (long) light.getCycleDuration());
+            coordinated++;
+        }
+        return coordinated;
+    }
+
+    // The first road is entered at its source, unless only its destination leads on to the second road
+    private static Intersection corridorStart(List<Road> corridor) {
+        if (corridor.isEmpty()) {
+            return null;
+        }
+        Road first = corridor.get(0);
+        if (corridor.size() > 1 && !first.isOneWay()) {
+            Road second = corridor.get(1);
+            Intersection source = first.getSource();
+            if (second.getSource() == source || second.getDestination() == source) {
+                Intersection destination = first.getDestination();
+                if (second.getSource() != destination && second.getDestination() != destination) {
+                    return destination;
+                }
+            }
+        }
+        return first.getSource();
+    }
 }
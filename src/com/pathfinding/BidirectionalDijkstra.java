@@ -0,0 +1,72 @@
+package com.pathfinding;
+
+/**
+ * Bidirectional Dijkstra for point-to-point queries on a {@link CompactCityGraph}.
+ * A forward search grows from the start over outgoing arcs while a backward search grows
+ * from the destination over incoming arcs, so one-way roads are only ever travelled in
+ * their own direction. The search stops as soon as the two frontiers together cannot
+ * improve on the best meeting point found so far.
+ */
+final class BidirectionalDijkstra {
+
+    private BidirectionalDijkstra() {
+    }
+
+    // Returns the node where the two searches meet on a shortest path, or -1 if target is unreachable
+    static int search(CompactCityGraph graph, int source, int target,
+                      SearchWorkspace forward, SearchWorkspace backward) {
+        forward.label(source, 0.0, -1);
+        backward.label(target, 0.0, -1);
+        if (source == target) return source;
+
+        forward.heap.insertOrDecrease(source, 0.0);
+        backward.heap.insertOrDecrease(target, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            double forwardMin = forward.heap.minKey();
+            double backwardMin = backward.heap.minKey();
+            if (forwardMin + backwardMin >= best) break;
+
+            if (forwardMin <= backwardMin) {
+                int current = forward.heap.poll();
+                forward.settled++;
+                double currentDist = forward.distance(current);
+                for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                    int neighbor = graph.target(arc);
+                    double newDist = currentDist + graph.weight(arc);
+                    if (newDist < forward.distance(neighbor)) {
+                        forward.label(neighbor, newDist, arc);
+                        forward.heap.insertOrDecrease(neighbor, newDist);
+                        double total = newDist + backward.distance(neighbor);
+                        if (total < best) {
+                            best = total;
+                            meeting = neighbor;
+                        }
+                    }
+                }
+            } else {
+                int current = backward.heap.poll();
+                backward.settled++;
+                double currentDist = backward.distance(current);
+                for (int slot = graph.firstInArc(current); slot < graph.endInArc(current); slot++) {
+                    int arc = graph.inArc(slot);
+                    int neighbor = graph.source(arc);
+                    double newDist = currentDist + graph.weight(arc);
+                    if (newDist < backward.distance(neighbor)) {
+                        backward.label(neighbor, newDist, arc);
+                        backward.heap.insertOrDecrease(neighbor, newDist);
+                        double total = forward.distance(neighbor) + newDist;
+                        if (total < best) {
+                            best = total;
+                            meeting = neighbor;
+                        }
+                    }
+                }
+            }
+        }
+        return meeting;
+    }
+}
@@ -0,0 +1,159 @@
+package com.pathfinding;
+
+import com.model.CityMap;
+import com.model.Intersection;
+import com.model.Road;
+
+/**
+ * CompactCityGraph is an immutable, primitive-array snapshot of the routable city.
+ * Nodes are int ids, arcs are stored in CSR form (offsets/targets, plus a reverse index of
+ * incoming arcs) and every arc carries the road weight captured when the snapshot was taken.
+ * Topology arrays are shared with the underlying {@link RoadGraph}, so re-snapshotting after
+ * a traffic change only allocates a new weight array.
+ */
+public final class CompactCityGraph {
+    private final RoadGraph roadGraph;
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] targets;
+    private final int[] inOffsets;
+    private final int[] inArcs;
+    private final double[] weights;
+    private final CostMetric metric;
+    private double minCostPerDistance = Double.NaN; // Lazily computed A* heuristic scale
+
+    private CompactCityGraph(RoadGraph roadGraph, double[] weights, CostMetric metric) {
+        this.roadGraph = roadGraph;
+        this.offsets = roadGraph.offsets();
+        this.sources = roadGraph.sources();
+        this.targets = roadGraph.targets();
+        this.inOffsets = roadGraph.inOffsets();
+        this.inArcs = roadGraph.inArcs();
+        this.weights = weights;
+        this.metric = metric;
+    }
+
+    // Snapshot the current weights of every road of a city map
+    public static CompactCityGraph snapshot(CityMap cityMap) {
+        return snapshot(RoadGraph.of(cityMap));
+    }
+
+    public static CompactCityGraph snapshot(CityMap cityMap, CostMetric metric) {
+        return snapshot(RoadGraph.of(cityMap), metric);
+    }
+
+    // Snapshot the current weights over an existing adjacency index
+    public static CompactCityGraph snapshot(RoadGraph roadGraph) {
+        return snapshot(roadGraph, CostMetric.CURRENT_WEIGHT);
+    }
+
+    // Snapshot arc costs under the given metric over an existing adjacency index
+    public static CompactCityGraph snapshot(RoadGraph roadGraph, CostMetric metric) {
+        if (metric == CostMetric.CURRENT_WEIGHT) {
+            // One batch pass, reused as is by every snapshot until some road changes
+            return new CompactCityGraph(roadGraph, roadGraph.weightTable().update(), metric);
+        }
+        double[] weights = new double[roadGraph.arcCount()];
+        for (int arc = 0; arc < weights.length; arc++) {
+            weights[arc] = metric.cost(roadGraph, arc);
+        }
+        return new CompactCityGraph(roadGraph, weights, metric);
+    }
+
+    // New snapshot with the roads' current costs under the same metric, sharing this graph's topology
+    public CompactCityGraph reweighted() {
+        return snapshot(roadGraph, metric);
+    }
+
+    public CostMetric getMetric() {
+        return metric;
+    }
+
+    public RoadGraph roadGraph() {
+        return roadGraph;
+    }
+
+    public int nodeCount() {
+        return offsets.length - 1;
+    }
+
+    public int arcCount() {
+        return targets.length;
+    }
+
+    // Node id of an intersection, or -1 if it is not part of the graph
+    public int nodeOf(Intersection intersection) {
+        return roadGraph.indexOf(intersection);
+    }
+
+    public Intersection intersection(int node) {
+        return roadGraph.intersection(node);
+    }
+
+    public int firstArc(int node) {
+        return offsets[node];
+    }
+
+    public int endArc(int node) {
+        return offsets[node + 1];
+    }
+
+    public int firstInArc(int node) {
+        return inOffsets[node];
+    }
+
+    public int endInArc(int node) {
+        return inOffsets[node + 1];
+    }
+
+    public int inArc(int slot) {
+        return inArcs[slot];
+    }
+
+    public int source(int arc) {
+        return sources[arc];
+    }
+
+    public int target(int arc) {
+        return targets[arc];
+    }
+
+    public double weight(int arc) {
+        return weights[arc];
+    }
+
+    public Road road(int arc) {
+        return roadGraph.road(arc);
+    }
+
+    public double euclideanDistance(int from, int to) {
+        return roadGraph.euclideanDistance(from, to);
+    }
+
+    /**
+     * Smallest arc cost per unit of straight-line distance in this snapshot.
+     * Every arc satisfies weight >= factor * distance(tail, head), so by the triangle inequality
+     * factor * distance(v, target) never overestimates the remaining cost: the A* heuristic built
+     * from it is admissible and consistent. Under the LENGTH and CURRENT_WEIGHT metrics a road never
+     * costs less than its length, so the minimum is set by free-flowing roads without traffic lights.
+     */
+    public double minCostPerDistance() {
+        double factor = minCostPerDistance;
+        if (Double.isNaN(factor)) {
+            factor = Double.POSITIVE_INFINITY;
+            for (int arc = 0; arc < targets.length; arc++) {
+                double distance = euclideanDistance(sources[arc], targets[arc]);
+                if (distance > 0) {
+                    factor = Math.min(factor, weights[arc] / distance);
+                }
+            }
+            if (Double.isInfinite(factor)) {
+                factor = 0.0; // No arc constrains the bound, fall back to Dijkstra
+            }
+            // Shave off rounding error so the bound stays a strict lower bound
+            factor *= 1 - 1e-9;
+            minCostPerDistance = factor;
+        }
+        return factor;
+    }
+}
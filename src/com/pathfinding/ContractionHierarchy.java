@@ -0,0 +1,486 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Contraction Hierarchies over a {@link CompactCityGraph} weight snapshot.
+ * Preprocessing contracts nodes one by one in order of importance (edge difference,
+ * contracted neighbours and hierarchy depth) and inserts a shortcut u -> w whenever no
+ * witness path avoiding the contracted node is as short as the path through it. A query is
+ * then a bidirectional Dijkstra that only climbs towards higher-ranked nodes, settling a small
+ * fraction of what plain Dijkstra would. Shortcuts are unpacked back into the original roads,
+ * so routes plug into the same List&lt;Road&gt; flow as {@link PathFinder}.
+ */
+public final class ContractionHierarchy {
+    // Bounds on each witness search: cheap estimates while ordering, thorough when contracting
+    private static final int SIMULATION_SETTLE_LIMIT = 30;
+    private static final int WITNESS_SETTLE_LIMIT = 200;
+
+    private final CompactCityGraph graph;
+    private final int[] rank;
+
+    // Hierarchy edges: original arcs (edgeArc >= 0) and shortcuts (edgeArc == -1)
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final double[] edgeWeight;
+    private final int[] edgeArc;
+    private final int[] edgeFirst;  // For shortcuts: the two edges it replaces
+    private final int[] edgeSecond;
+
+    // Upward edges keyed by source, and downward edges keyed by target (searched backwards)
+    private final int[] upOffsets;
+    private final int[] upEdges;
+    private final int[] downOffsets;
+    private final int[] downEdges;
+
+    private final PreprocessingReport report;
+
+    /**
+     * Summary of the preprocessing run.
+     */
+    public static final class PreprocessingReport {
+        private final int nodes;
+        private final int arcs;
+        private final int shortcuts;
+        private final long orderingMillis;
+
+        PreprocessingReport(int nodes, int arcs, int shortcuts, long orderingMillis) {
+            this.nodes = nodes;
+            this.arcs = arcs;
+            this.shortcuts = shortcuts;
+            this.orderingMillis = orderingMillis;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+
+        public int getArcs() {
+            return arcs;
+        }
+
+        public int getShortcuts() {
+            return shortcuts;
+        }
+
+        // Wall time spent ordering nodes and creating shortcuts
+        public long getPreprocessingMillis() {
+            return orderingMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CH preprocessing: %d nodes, %d arcs, %d shortcuts in %d ms",
+                    nodes, arcs, shortcuts, orderingMillis);
+        }
+    }
+
+    private ContractionHierarchy(CompactCityGraph graph, Contractor contractor, long millis) {
+        int n = graph.nodeCount();
+        int m = contractor.edgeCount;
+        this.graph = graph;
+        this.rank = contractor.rank;
+        this.edgeSource = Arrays.copyOf(contractor.source, m);
+        this.edgeTarget = Arrays.copyOf(contractor.target, m);
+        this.edgeWeight = Arrays.copyOf(contractor.weight, m);
+        this.edgeArc = Arrays.copyOf(contractor.arc, m);
+        this.edgeFirst = Arrays.copyOf(contractor.first, m);
+        this.edgeSecond = Arrays.copyOf(contractor.second, m);
+
+        this.upOffsets = new int[n + 1];
+        this.downOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            if (rank[edgeSource[e]] < rank[edgeTarget[e]]) {
+                upOffsets[edgeSource[e] + 1]++;
+            } else {
+                downOffsets[edgeTarget[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        this.upEdges = new int[upOffsets[n]];
+        this.downEdges = new int[downOffsets[n]];
+        int[] upNext = Arrays.copyOf(upOffsets, n);
+        int[] downNext = Arrays.copyOf(downOffsets, n);
+        for (int e = 0; e < m; e++) {
+            if (rank[edgeSource[e]] < rank[edgeTarget[e]]) {
+                upEdges[upNext[edgeSource[e]]++] = e;
+            } else {
+                downEdges[downNext[edgeTarget[e]]++] = e;
+            }
+        }
+
+        this.report = new PreprocessingReport(n, graph.arcCount(), m - contractor.originalEdges, millis);
+    }
+
+    // Order nodes and create shortcuts for the weights of the given snapshot
+    public static ContractionHierarchy build(CompactCityGraph graph) {
+        long startTime = System.nanoTime();
+        Contractor contractor = new Contractor(graph);
+        contractor.contractAll();
+        long millis = (System.nanoTime() - startTime) / 1_000_000;
+        return new ContractionHierarchy(graph, contractor, millis);
+    }
+
+    public CompactCityGraph getGraph() {
+        return graph;
+    }
+
+    public PreprocessingReport getReport() {
+        return report;
+    }
+
+    // Contraction order of a node: higher ranks were contracted later
+    public int rank(int node) {
+        return rank[node];
+    }
+
+    // Upward bidirectional query; the route is unpacked into original roads
+    public RouteResult route(Intersection start, Intersection destination) {
+        int source = graph.nodeOf(start);
+        int target = graph.nodeOf(destination);
+        if (source < 0 || target < 0) {
+            return new RouteResult(new ArrayList<>(), Double.POSITIVE_INFINITY,
+                    RouteResult.Algorithm.CONTRACTION_HIERARCHIES, 0);
+        }
+
+        SearchWorkspace forward = PathFinder.workspaceFor(graph.nodeCount());
+        SearchWorkspace backward = PathFinder.backwardWorkspaceFor(graph.nodeCount());
+        forward.label(source, 0.0, -1);
+        forward.heap.insertOrDecrease(source, 0.0);
+        backward.label(target, 0.0, -1);
+        backward.heap.insertOrDecrease(target, 0.0);
+
+        double best = source == target ? 0.0 : Double.POSITIVE_INFINITY;
+        int meeting = source == target ? source : -1;
+
+        while (true) {
+            boolean forwardOpen = !forward.heap.isEmpty() && forward.heap.minKey() < best;
+            boolean backwardOpen = !backward.heap.isEmpty() && backward.heap.minKey() < best;
+            if (!forwardOpen && !backwardOpen) break;
+
+            if (forwardOpen && (!backwardOpen || forward.heap.minKey() <= backward.heap.minKey())) {
+                int current = forward.heap.poll();
+                forward.settled++;
+                double currentDist = forward.distance(current);
+                for (int i = upOffsets[current]; i < upOffsets[current + 1]; i++) {
+                    int edge = upEdges[i];
+                    int neighbor = edgeTarget[edge];
+                    double newDist = currentDist + edgeWeight[edge];
+                    if (newDist < forward.distance(neighbor)) {
+                        forward.label(neighbor, newDist, edge);
+                        forward.heap.insertOrDecrease(neighbor, newDist);
+                        double total = newDist + backward.distance(neighbor);
+                        if (total < best) {
+                            best = total;
+                            meeting = neighbor;
+                        }
+                    }
+                }
+            } else {
+                int current = backward.heap.poll();
+                backward.settled++;
+                double currentDist = backward.distance(current);
+                for (int i = downOffsets[current]; i < downOffsets[current + 1]; i++) {
+                    int edge = downEdges[i];
+                    int neighbor = edgeSource[edge];
+                    double newDist = currentDist + edgeWeight[edge];
+                    if (newDist < backward.distance(neighbor)) {
+                        backward.label(neighbor, newDist, edge);
+                        backward.heap.insertOrDecrease(neighbor, newDist);
+                        double total = forward.distance(neighbor) + newDist;
+                        if (total < best) {
+                            best = total;
+                            meeting = neighbor;
+                        }
+                    }
+                }
+            }
+        }
+
+        int settled = forward.settled + backward.settled;
+        List<Road> path = new ArrayList<>();
+        if (meeting < 0) {
+            return new RouteResult(path, Double.POSITIVE_INFINITY, RouteResult.Algorithm.CONTRACTION_HIERARCHIES, settled);
+        }
+
+        // Hierarchy edges from source up to the meeting node, then down to target
+        List<Integer> edges = new ArrayList<>();
+        int current = meeting;
+        int edge;
+        while ((edge = forward.predecessorArc(current)) >= 0) {
+            edges.add(edge);
+            current = edgeSource[edge];
+        }
+        Collections.reverse(edges);
+        current = meeting;
+        while ((edge = backward.predecessorArc(current)) >= 0) {
+            edges.add(edge);
+            current = edgeTarget[edge];
+        }
+        for (int e : edges) {
+            unpack(e, path);
+        }
+        return new RouteResult(path, best, RouteResult.Algorithm.CONTRACTION_HIERARCHIES, settled);
+    }
+
+    // Expand a hierarchy edge into the original roads it stands for
+    private void unpack(int edge, List<Road> path) {
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = edge;
+        while (size > 0) {
+            int e = stack[--size];
+            if (edgeArc[e] >= 0) {
+                path.add(graph.road(edgeArc[e]));
+            } else {
+                if (size + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[size++] = edgeSecond[e];
+                stack[size++] = edgeFirst[e];
+            }
+        }
+    }
+
+    /**
+     * Compare random queries against plain Dijkstra on the same snapshot (the search behind
+     * PathFinder.findShortestPath) and return how many disagree on the route cost.
+     */
+    public int verify(int samples, long seed) {
+        Random random = new Random(seed);
+        int mismatches = 0;
+        for (int i = 0; i < samples && graph.nodeCount() > 0; i++) {
+            Intersection start = graph.intersection(random.nextInt(graph.nodeCount()));
+            Intersection destination = graph.intersection(random.nextInt(graph.nodeCount()));
+            double expected = PathFinder.route(start, destination, graph, RouteResult.Algorithm.DIJKSTRA).getCost();
+            double actual = route(start, destination).getCost();
+            if (expected != actual && Math.abs(expected - actual) > 1e-9 * Math.max(1.0, expected)) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Mutable state of the preprocessing phase: a dynamic edge list that grows with
+     * shortcuts, per-node incident edges, and the witness search workspace.
+     */
+    private static final class Contractor {
+        private final CompactCityGraph graph;
+        private final int n;
+        private final int[] rank;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+        private final int[] level;
+        private final int[] lastTouchedBy;
+        private final int[][] outEdges;
+        private final int[] outCount;
+        private final int[][] inEdges;
+        private final int[] inCount;
+        private final SearchWorkspace witness;
+
+        int[] source = new int[16];
+        int[] target = new int[16];
+        double[] weight = new double[16];
+        int[] arc = new int[16];
+        int[] first = new int[16];
+        int[] second = new int[16];
+        int edgeCount;
+        int originalEdges;
+
+        Contractor(CompactCityGraph graph) {
+            this.graph = graph;
+            this.n = graph.nodeCount();
+            this.rank = new int[n];
+            this.contracted = new boolean[n];
+            this.contractedNeighbors = new int[n];
+            this.level = new int[n];
+            this.lastTouchedBy = new int[n];
+            Arrays.fill(lastTouchedBy, -1);
+            this.outEdges = new int[n][];
+            this.outCount = new int[n];
+            this.inEdges = new int[n][];
+            this.inCount = new int[n];
+            this.witness = new SearchWorkspace(n);
+
+            for (int a = 0; a < graph.arcCount(); a++) {
+                int u = graph.source(a);
+                int w = graph.target(a);
+                // Blocked roads and self loops can never be part of a shortest path
+                if (u != w && graph.weight(a) < Double.POSITIVE_INFINITY) {
+                    addEdge(u, w, graph.weight(a), a, -1, -1);
+                }
+            }
+            originalEdges = edgeCount;
+        }
+
+        void contractAll() {
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++) {
+                queue.insertOrDecrease(v, priority(v));
+            }
+
+            int nextRank = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                // Lazy update: re-check the priority and postpone the node if it got worse
+                double priority = priority(v);
+                if (!queue.isEmpty() && priority > queue.minKey()) {
+                    queue.insertOrDecrease(v, priority);
+                    continue;
+                }
+
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = nextRank++;
+
+                for (int i = 0; i < outCount[v]; i++) {
+                    touchNeighbor(v, target[outEdges[v][i]], queue);
+                }
+                for (int i = 0; i < inCount[v]; i++) {
+                    touchNeighbor(v, source[inEdges[v][i]], queue);
+                }
+            }
+        }
+
+        // Drop edges to contracted nodes from x's lists so later searches skip them for free
+        private void prune(int x) {
+            int kept = 0;
+            for (int i = 0; i < outCount[x]; i++) {
+                int e = outEdges[x][i];
+                if (!contracted[target[e]]) outEdges[x][kept++] = e;
+            }
+            outCount[x] = kept;
+            kept = 0;
+            for (int i = 0; i < inCount[x]; i++) {
+                int e = inEdges[x][i];
+                if (!contracted[source[e]]) inEdges[x][kept++] = e;
+            }
+            inCount[x] = kept;
+        }
+
+        private void touchNeighbor(int v, int x, IndexedMinHeap queue) {
+            // Parallel edges and two-way pairs list a neighbour several times; handle it once
+            if (!contracted[x] && queue.contains(x) && lastTouchedBy[x] != v) {
+                lastTouchedBy[x] = v;
+                prune(x);
+                contractedNeighbors[x]++;
+                level[x] = Math.max(level[x], level[v] + 1);
+                queue.update(x, priority(x));
+            }
+        }
+
+        // Edge difference plus the number of neighbours already contracted
+        private double priority(int v) {
+            int degree = 0;
+            for (int i = 0; i < outCount[v]; i++) {
+                if (!contracted[target[outEdges[v][i]]]) degree++;
+            }
+            for (int i = 0; i < inCount[v]; i++) {
+                if (!contracted[source[inEdges[v][i]]]) degree++;
+            }
+            return 2.0 * (contract(v, true) - degree) + contractedNeighbors[v] + level[v];
+        }
+
+        // Returns the number of shortcuts needed to remove v; adds them unless simulating
+        private int contract(int v, boolean simulate) {
+            int shortcuts = 0;
+            for (int i = 0; i < inCount[v]; i++) {
+                int in = inEdges[v][i];
+                int u = source[in];
+                if (contracted[u]) continue;
+
+                double maxOut = -1;
+                for (int j = 0; j < outCount[v]; j++) {
+                    int out = outEdges[v][j];
+                    int w = target[out];
+                    if (!contracted[w] && w != u) {
+                        maxOut = Math.max(maxOut, weight[out]);
+                    }
+                }
+                if (maxOut < 0) continue;
+
+                witnessSearch(u, v, weight[in] + maxOut, simulate ? SIMULATION_SETTLE_LIMIT : WITNESS_SETTLE_LIMIT);
+                for (int j = 0; j < outCount[v]; j++) {
+                    int out = outEdges[v][j];
+                    int w = target[out];
+                    if (contracted[w] || w == u) continue;
+                    double via = weight[in] + weight[out];
+                    if (witness.distance(w) > via) {
+                        shortcuts++;
+                        if (!simulate) {
+                            addEdge(u, w, via, -1, in, out);
+                        }
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        // Bounded Dijkstra from u over the remaining graph, avoiding the node being contracted
+        private void witnessSearch(int u, int avoid, double maxCost, int settleLimit) {
+            witness.reset();
+            IndexedMinHeap heap = witness.heap;
+            witness.label(u, 0.0, -1);
+            heap.insertOrDecrease(u, 0.0);
+            while (!heap.isEmpty() && witness.settled < settleLimit) {
+                if (heap.minKey() > maxCost) break;
+                int current = heap.poll();
+                witness.settled++;
+                double currentDist = witness.distance(current);
+                for (int i = 0; i < outCount[current]; i++) {
+                    int e = outEdges[current][i];
+                    int next = target[e];
+                    if (next == avoid || contracted[next]) continue;
+                    double newDist = currentDist + weight[e];
+                    if (newDist < witness.distance(next)) {
+                        witness.label(next, newDist, e);
+                        heap.insertOrDecrease(next, newDist);
+                    }
+                }
+            }
+        }
+
+        private void addEdge(int u, int w, double cost, int originalArc, int firstEdge, int secondEdge) {
+            if (edgeCount == source.length) {
+                int capacity = edgeCount * 2;
+                source = Arrays.copyOf(source, capacity);
+                target = Arrays.copyOf(target, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                arc = Arrays.copyOf(arc, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+            }
+            int e = edgeCount++;
+            source[e] = u;
+            target[e] = w;
+            weight[e] = cost;
+            arc[e] = originalArc;
+            first[e] = firstEdge;
+            second[e] = secondEdge;
+
+            outEdges[u] = append(outEdges[u], outCount[u]++, e);
+            inEdges[w] = append(inEdges[w], inCount[w]++, e);
+        }
+
+        private static int[] append(int[] list, int size, int value) {
+            if (list == null) {
+                list = new int[4];
+            } else if (size == list.length) {
+                list = Arrays.copyOf(list, size * 2);
+            }
+            list[size] = value;
+            return list;
+        }
+    }
+}
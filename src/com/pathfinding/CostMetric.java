@@ -0,0 +1,88 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+import com.model.TrafficLight;
+
+/**
+ * The cost a route is optimised for. A {@link CompactCityGraph} snapshot is taken under one
+ * metric and every search and ranking over that snapshot uses it, so paths are never found
+ * with one cost and compared with another.
+ */
+public enum CostMetric {
+    // Physical road length in KM, ignoring traffic
+    LENGTH {
+        @Override
+        public double cost(Road road, boolean reverse) {
+            return road.isBlocked() ? Double.POSITIVE_INFINITY : road.getLength();
+        }
+    },
+
+    // Road.calculateWeight: length scaled by congestion and traffic light penalties
+    CURRENT_WEIGHT {
+        @Override
+        public double cost(Road road, boolean reverse) {
+            return road.calculateWeight(reverse);
+        }
+    },
+
+    // Seconds to drive the road at congested speed; light waits are left to time-dependent searches
+    DRIVING_TIME {
+        @Override
+        public double cost(Road road, boolean reverse) {
+            return drivingSeconds(road, reverse);
+        }
+    },
+
+    // Expected seconds to drive the road at congested speed plus the average red-light wait
+    TRAVEL_TIME {
+        @Override
+        public double cost(Road road, boolean reverse) {
+            double seconds = drivingSeconds(road, reverse);
+            if (seconds == Double.POSITIVE_INFINITY) {
+                return seconds;
+            }
+
+            TrafficLight light = road.getExit(reverse).getTrafficLight();
+            if (light != null) {
+                // Arriving at a uniformly random moment, the wait is red^2 / (2 * cycle) on average
+                int cycle = light.getGreenDuration() + light.getYellowDuration() + light.getRedDuration();
+                if (cycle > 0) {
+                    seconds += (double) light.getRedDuration() * light.getRedDuration() / (2.0 * cycle);
+                }
+            }
+            return seconds;
+        }
+    };
+
+    private static final double FREE_FLOW_SPEED_KMH = 50.0; // Urban speed limit
+
+    // Cost of travelling the road source -> destination, or destination -> source when reverse
+    public abstract double cost(Road road, boolean reverse);
+
+    // Cost of one arc of a road graph, in the arc's direction
+    public double cost(RoadGraph graph, int arc) {
+        return cost(graph.road(arc), graph.isReverse(arc));
+    }
+
+    // Seconds to drive the road at the congestion of one direction, without any wait at the lights
+    static double drivingSeconds(Road road, boolean reverse) {
+        if (road.isBlocked()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double speed = FREE_FLOW_SPEED_KMH / (1 + road.getVehicleCount(reverse) / 10.0);
+        return road.getLength() / speed * 3600;
+    }
+
+    // Total cost of a path under this metric, driven from `start`; each road is costed in the direction it is entered
+    public double cost(Intersection start, Iterable<Road> path) {
+        double total = 0.0;
+        Intersection at = start;
+        for (Road road : path) {
+            Intersection next = road.otherEnd(at); // Also rejects a road that does not continue the path
+            total += cost(road, road.getEntry(false) != at);
+            at = next;
+        }
+        return total;
+    }
+}
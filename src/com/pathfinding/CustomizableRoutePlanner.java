@@ -0,0 +1,324 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Customizable route planning (CRP) for weights that keep changing under live traffic.
+ * <p>
+ * Preprocessing is split in two. The metric-independent part partitions the road graph into
+ * cells of bounded size by recursive coordinate bisection and records the boundary nodes of
+ * every cell; it depends only on topology and is built once. The customization part computes,
+ * for each cell, the shortest in-cell distance between every pair of its boundary nodes under
+ * the current weights. It touches each cell independently, runs in parallel, and is the only
+ * step repeated when {@code WeightSimulator} changes traffic.
+ * <p>
+ * A query runs Dijkstra on the original arcs inside the start and destination cells and on the
+ * boundary cliques plus cut arcs everywhere else, then unpacks clique edges into roads.
+ */
+public final class CustomizableRoutePlanner {
+    public static final int DEFAULT_MAX_CELL_SIZE = 128;
+
+    private final RoadGraph topology;
+    private final int[] cellOf;            // cellOf[v] = cell containing node v
+    private final int cellCount;
+    private final int[] boundaryOffsets;   // Boundary nodes of cell c: boundaryNodes[boundaryOffsets[c] ..]
+    private final int[] boundaryNodes;
+    private final int[] boundarySlot;      // Position of a node in its cell's boundary list, or -1
+    private final int[] cliqueOffsets;     // Cell c's k*k distance matrix starts at cliqueOffsets[c]
+    private final long partitionMillis;
+
+    private volatile Metric metric;
+
+    // Customized state: the weight snapshot and the boundary cliques computed from it
+    private static final class Metric {
+        final CompactCityGraph weights;
+        final double[] cliques;
+        final long customizationMillis;
+
+        Metric(CompactCityGraph weights, double[] cliques, long customizationMillis) {
+            this.weights = weights;
+            this.cliques = cliques;
+            this.customizationMillis = customizationMillis;
+        }
+    }
+
+    private CustomizableRoutePlanner(RoadGraph topology, int maxCellSize) {
+        long startTime = System.nanoTime();
+        int n = topology.nodeCount();
+        this.topology = topology;
+        this.cellOf = new int[n];
+
+        int[] order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[v] = v;
+        }
+        int[] nextCell = new int[1];
+        bisect(order, 0, n, Math.max(1, maxCellSize), nextCell);
+        this.cellCount = nextCell[0];
+
+        // A node is on the boundary if any arc connects it to another cell
+        boolean[] boundary = new boolean[n];
+        for (int arc = 0; arc < topology.arcCount(); arc++) {
+            int u = topology.source(arc);
+            int w = topology.target(arc);
+            if (cellOf[u] != cellOf[w]) {
+                boundary[u] = true;
+                boundary[w] = true;
+            }
+        }
+
+        this.boundaryOffsets = new int[cellCount + 1];
+        for (int v = 0; v < n; v++) {
+            if (boundary[v]) boundaryOffsets[cellOf[v] + 1]++;
+        }
+        this.cliqueOffsets = new int[cellCount + 1];
+        for (int c = 0; c < cellCount; c++) {
+            int k = boundaryOffsets[c + 1];
+            cliqueOffsets[c + 1] = cliqueOffsets[c] + k * k;
+            boundaryOffsets[c + 1] += boundaryOffsets[c];
+        }
+
+        this.boundaryNodes = new int[boundaryOffsets[cellCount]];
+        this.boundarySlot = new int[n];
+        Arrays.fill(boundarySlot, -1);
+        int[] next = Arrays.copyOf(boundaryOffsets, cellCount);
+        for (int v = 0; v < n; v++) {
+            if (boundary[v]) {
+                int c = cellOf[v];
+                boundarySlot[v] = next[c] - boundaryOffsets[c];
+                boundaryNodes[next[c]++] = v;
+            }
+        }
+        this.partitionMillis = (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    // Partition the topology only; call customize before routing
+    public static CustomizableRoutePlanner partition(RoadGraph topology, int maxCellSize) {
+        return new CustomizableRoutePlanner(topology, maxCellSize);
+    }
+
+    // Partition the snapshot's topology and customize it with the snapshot's weights
+    public static CustomizableRoutePlanner build(CompactCityGraph weights) {
+        CustomizableRoutePlanner planner = partition(weights.roadGraph(), DEFAULT_MAX_CELL_SIZE);
+        planner.customize(weights);
+        return planner;
+    }
+
+    // Split order[lo, hi) at the median of its wider coordinate until cells are small enough
+    private void bisect(int[] order, int lo, int hi, int maxCellSize, int[] nextCell) {
+        if (hi - lo <= maxCellSize) {
+            int cell = nextCell[0]++;
+            for (int i = lo; i < hi; i++) {
+                cellOf[order[i]] = cell;
+            }
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            minX = Math.min(minX, topology.x(order[i]));
+            maxX = Math.max(maxX, topology.x(order[i]));
+            minY = Math.min(minY, topology.y(order[i]));
+            maxY = Math.max(maxY, topology.y(order[i]));
+        }
+        boolean byX = maxX - minX >= maxY - minY;
+        int mid = (lo + hi) >>> 1;
+        select(order, lo, hi - 1, mid, byX);
+        bisect(order, lo, mid, maxCellSize, nextCell);
+        bisect(order, mid, hi, maxCellSize, nextCell);
+    }
+
+    // Quickselect: move the k-th smallest node by coordinate to position k
+    private void select(int[] order, int lo, int hi, int k, boolean byX) {
+        while (lo < hi) {
+            double pivot = coordinate(order[(lo + hi) >>> 1], byX);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coordinate(order[i], byX) < pivot) i++;
+                while (coordinate(order[j], byX) > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double coordinate(int node, boolean byX) {
+        return byX ? topology.x(node) : topology.y(node);
+    }
+
+    /**
+     * Recompute the boundary cliques for a new weight snapshot of the same topology.
+     * Cells are independent, so they are customized in parallel; queries keep using the
+     * previous metric until the new one is published.
+     */
+    public void customize(CompactCityGraph weights) {
+        if (weights.roadGraph() != topology) {
+            throw new IllegalArgumentException("Weight snapshot was taken over a different road graph");
+        }
+        long startTime = System.nanoTime();
+        double[] cliques = new double[cliqueOffsets[cellCount]];
+        IntStream.range(0, cellCount).parallel().forEach(cell -> customizeCell(cell, weights, cliques));
+        metric = new Metric(weights, cliques, (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private void customizeCell(int cell, CompactCityGraph weights, double[] cliques) {
+        int first = boundaryOffsets[cell];
+        int k = boundaryOffsets[cell + 1] - first;
+        SearchWorkspace workspace = PathFinder.workspaceFor(weights.nodeCount());
+        for (int i = 0; i < k; i++) {
+            workspace.reset();
+            cellSearch(weights, boundaryNodes[first + i], -1, workspace);
+            int row = cliqueOffsets[cell] + i * k;
+            for (int j = 0; j < k; j++) {
+                cliques[row + j] = workspace.distance(boundaryNodes[first + j]);
+            }
+        }
+    }
+
+    // Dijkstra that never leaves the cell of the source node
+    private void cellSearch(CompactCityGraph weights, int source, int target, SearchWorkspace workspace) {
+        int cell = cellOf[source];
+        IndexedMinHeap heap = workspace.heap;
+        workspace.label(source, 0.0, -1);
+        heap.insertOrDecrease(source, 0.0);
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            workspace.settled++;
+            if (current == target) break;
+            double currentDist = workspace.distance(current);
+            for (int arc = weights.firstArc(current); arc < weights.endArc(current); arc++) {
+                int neighbor = weights.target(arc);
+                if (cellOf[neighbor] != cell) continue;
+                double newDist = currentDist + weights.weight(arc);
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+    }
+
+    public RouteResult route(Intersection start, Intersection destination) {
+        Metric current = metric;
+        if (current == null) {
+            throw new IllegalStateException("Planner has not been customized yet");
+        }
+        CompactCityGraph weights = current.weights;
+        int source = weights.nodeOf(start);
+        int target = weights.nodeOf(destination);
+        if (source < 0 || target < 0) {
+            return new RouteResult(new ArrayList<>(), Double.POSITIVE_INFINITY,
+                    RouteResult.Algorithm.CUSTOMIZABLE_ROUTE_PLANNING, 0);
+        }
+
+        int sourceCell = cellOf[source];
+        int targetCell = cellOf[target];
+        SearchWorkspace workspace = PathFinder.workspaceFor(weights.nodeCount());
+        IndexedMinHeap heap = workspace.heap;
+        workspace.label(source, 0.0, -1);
+        heap.insertOrDecrease(source, 0.0);
+
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            workspace.settled++;
+            if (node == target) break;
+            double nodeDist = workspace.distance(node);
+            int cell = cellOf[node];
+            boolean local = cell == sourceCell || cell == targetCell;
+
+            for (int arc = weights.firstArc(node); arc < weights.endArc(node); arc++) {
+                int neighbor = weights.target(arc);
+                // Away from the endpoints only cut arcs are followed; cells are crossed via cliques
+                if (!local && cellOf[neighbor] == cell) continue;
+                double newDist = nodeDist + weights.weight(arc);
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist);
+                }
+            }
+
+            if (!local && boundarySlot[node] >= 0) {
+                int first = boundaryOffsets[cell];
+                int k = boundaryOffsets[cell + 1] - first;
+                int row = cliqueOffsets[cell] + boundarySlot[node] * k;
+                for (int j = 0; j < k; j++) {
+                    int neighbor = boundaryNodes[first + j];
+                    double newDist = nodeDist + current.cliques[row + j];
+                    if (newDist < workspace.distance(neighbor)) {
+                        // Clique edges are recorded as -2 - tail so they can be told apart from arcs
+                        workspace.label(neighbor, newDist, -2 - node);
+                        heap.insertOrDecrease(neighbor, newDist);
+                    }
+                }
+            }
+        }
+
+        int settled = workspace.settled;
+        double cost = workspace.distance(target);
+        if (cost == Double.POSITIVE_INFINITY) {
+            return new RouteResult(new ArrayList<>(), cost, RouteResult.Algorithm.CUSTOMIZABLE_ROUTE_PLANNING, settled);
+        }
+
+        // Collect the overlay path as (tail, head, arc-or-clique) steps before reusing workspaces
+        List<int[]> steps = new ArrayList<>();
+        int node = target;
+        while (node != source) {
+            int predecessor = workspace.predecessorArc(node);
+            int tail = predecessor >= 0 ? weights.source(predecessor) : -2 - predecessor;
+            steps.add(new int[]{tail, node, predecessor});
+            node = tail;
+        }
+        Collections.reverse(steps);
+
+        List<Road> path = new ArrayList<>();
+        for (int[] step : steps) {
+            if (step[2] >= 0) {
+                path.add(weights.road(step[2]));
+            } else {
+                SearchWorkspace unpack = PathFinder.backwardWorkspaceFor(weights.nodeCount());
+                cellSearch(weights, step[0], step[1], unpack);
+                path.addAll(PathFinder.reconstructRoute(weights, unpack, step[1]));
+            }
+        }
+        return new RouteResult(path, cost, RouteResult.Algorithm.CUSTOMIZABLE_ROUTE_PLANNING, settled);
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getBoundaryNodeCount() {
+        return boundaryNodes.length;
+    }
+
+    // Wall time of the metric-independent partitioning
+    public long getPartitionMillis() {
+        return partitionMillis;
+    }
+
+    // Wall time of the most recent customization, or -1 if none has run
+    public long getCustomizationMillis() {
+        Metric current = metric;
+        return current != null ? current.customizationMillis : -1;
+    }
+}
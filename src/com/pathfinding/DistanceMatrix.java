@@ -0,0 +1,156 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many travel costs between a set of sources (e.g. depots) and targets (e.g. drop
+ * points) on one {@link CompactCityGraph} snapshot. Each source runs a single one-to-all
+ * Dijkstra that stops once every target is settled, instead of one search per pair. Sources
+ * are spread over all cores and every thread reuses its own search workspace.
+ */
+public final class DistanceMatrix {
+    private final CompactCityGraph graph;
+    private final int[] sourceNodes;
+    private final int[] targetNodes;
+    private final double[][] distances;
+    private final int[][] predecessorTrees; // Per source, or null when trees were not requested
+
+    private DistanceMatrix(CompactCityGraph graph, int[] sourceNodes, int[] targetNodes, boolean keepTrees) {
+        this.graph = graph;
+        this.sourceNodes = sourceNodes;
+        this.targetNodes = targetNodes;
+        this.distances = new double[sourceNodes.length][targetNodes.length];
+        this.predecessorTrees = keepTrees ? new int[sourceNodes.length][] : null;
+    }
+
+    // Costs only
+    public static DistanceMatrix compute(CompactCityGraph graph, List<Intersection> sources, List<Intersection> targets) {
+        return compute(graph, sources, targets, false);
+    }
+
+    /**
+     * Compute the matrix; with keepTrees each source also keeps its predecessor tree (one int per
+     * graph node) so the route behind any entry can be recovered with {@link #route(int, int)}.
+     */
+    public static DistanceMatrix compute(CompactCityGraph graph, List<Intersection> sources, List<Intersection> targets,
+                                         boolean keepTrees) {
+        int[] sourceNodes = toNodes(graph, sources);
+        int[] targetNodes = toNodes(graph, targets);
+        DistanceMatrix matrix = new DistanceMatrix(graph, sourceNodes, targetNodes, keepTrees);
+
+        // Node -> is a target; shared read-only by all searches
+        boolean[] isTarget = new boolean[graph.nodeCount()];
+        int distinctTargets = 0;
+        for (int node : targetNodes) {
+            if (node >= 0 && !isTarget[node]) {
+                isTarget[node] = true;
+                distinctTargets++;
+            }
+        }
+        int targetCount = distinctTargets;
+
+        IntStream.range(0, sourceNodes.length).parallel()
+                .forEach(row -> matrix.computeRow(row, isTarget, targetCount));
+        return matrix;
+    }
+
+    private static int[] toNodes(CompactCityGraph graph, List<Intersection> intersections) {
+        int[] nodes = new int[intersections.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = graph.nodeOf(intersections.get(i));
+        }
+        return nodes;
+    }
+
+    private void computeRow(int row, boolean[] isTarget, int targetCount) {
+        double[] rowDistances = distances[row];
+        int source = sourceNodes[row];
+        if (source < 0) {
+            Arrays.fill(rowDistances, Double.POSITIVE_INFINITY);
+            return;
+        }
+
+        SearchWorkspace workspace = PathFinder.workspaceFor(graph.nodeCount());
+        IndexedMinHeap heap = workspace.heap;
+        workspace.label(source, 0.0, -1);
+        heap.insertOrDecrease(source, 0.0);
+        int remaining = targetCount;
+
+        while (!heap.isEmpty() && remaining > 0) {
+            int current = heap.poll();
+            workspace.settled++;
+            if (isTarget[current]) {
+                remaining--;
+            }
+            double currentDist = workspace.distance(current);
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int neighbor = graph.target(arc);
+                double newDist = currentDist + graph.weight(arc);
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+
+        for (int column = 0; column < targetNodes.length; column++) {
+            int target = targetNodes[column];
+            rowDistances[column] = target >= 0 ? workspace.distance(target) : Double.POSITIVE_INFINITY;
+        }
+
+        if (predecessorTrees != null) {
+            int[] tree = new int[graph.nodeCount()];
+            for (int node = 0; node < tree.length; node++) {
+                tree[node] = workspace.predecessorArc(node);
+            }
+            predecessorTrees[row] = tree;
+        }
+    }
+
+    // Dense source x target matrix; unreachable pairs are infinity
+    public double[][] getDistances() {
+        return distances;
+    }
+
+    public double distance(int sourceIndex, int targetIndex) {
+        return distances[sourceIndex][targetIndex];
+    }
+
+    public int getSourceCount() {
+        return sourceNodes.length;
+    }
+
+    public int getTargetCount() {
+        return targetNodes.length;
+    }
+
+    public boolean hasPredecessorTrees() {
+        return predecessorTrees != null;
+    }
+
+    // Roads from source i to target j; requires predecessor trees, empty if unreachable
+    public List<Road> route(int sourceIndex, int targetIndex) {
+        if (predecessorTrees == null) {
+            throw new IllegalStateException("Distance matrix was computed without predecessor trees");
+        }
+        int target = targetNodes[targetIndex];
+        if (target < 0 || distances[sourceIndex][targetIndex] == Double.POSITIVE_INFINITY) {
+            return new ArrayList<>();
+        }
+
+        int[] tree = predecessorTrees[sourceIndex];
+        List<Road> path = new ArrayList<>();
+        for (int node = target, arc; (arc = tree[node]) >= 0; node = graph.source(arc)) {
+            path.add(graph.road(arc));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
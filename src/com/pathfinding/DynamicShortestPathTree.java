@@ -0,0 +1,246 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.*;
+
+/**
+ * A shortest-path tree from one source over a {@link RoadGraph} that is repaired in place when
+ * road weights change, instead of being rebuilt (Ramalingam-Reps style).
+ * <p>
+ * A repair has two seeding steps. If a tree arc got more expensive, only the nodes below it
+ * can get worse. That subtree is detached and each of its nodes is re-seeded from its cheapest
+ * in-arc outside the subtree. If an arc got cheaper and now improves its head, that head is
+ * seeded too. A Dijkstra pass from the seeds then settles only the nodes whose distance
+ * actually changes, and everything else keeps its label.
+ * <p>
+ * Weights are taken from the tree's {@link CostMetric}. {@link #refresh()} finds the changed
+ * roads through {@link Road#getWeightVersion()}, so it sees changes from WeightSimulator,
+ * blocking and resets. It does not see traffic light timing changes, which TRAVEL_TIME reads.
+ * A tree is not thread-safe; trees from different hubs can be refreshed concurrently.
+ */
+public final class DynamicShortestPathTree {
+    // Past this share of changed arcs, a plain rebuild is cheaper than detaching subtrees
+    private static final double REBUILD_FRACTION = 0.25;
+
+    private final RoadGraph graph;
+    private final CostMetric metric;
+    private final int source;
+    private final double[] weights;   // Arc weights the current tree was computed with
+    private final double[] distances;
+    private final int[] parentArcs;   // Tree arc into each node, -1 for the source and unreachable nodes
+    private final IndexedMinHeap heap;
+    private final boolean[] detached; // Scratch flags for the subtree being repaired
+    private long epoch;
+    private int lastSettled;
+
+    private DynamicShortestPathTree(RoadGraph graph, CostMetric metric, int source) {
+        this.graph = graph;
+        this.metric = metric;
+        this.source = source;
+        int n = graph.nodeCount();
+        this.weights = new double[graph.arcCount()];
+        this.distances = new double[n];
+        this.parentArcs = new int[n];
+        this.heap = new IndexedMinHeap(n);
+        this.detached = new boolean[n];
+    }
+
+    public static DynamicShortestPathTree build(RoadGraph graph, Intersection source) {
+        return build(graph, source, CostMetric.CURRENT_WEIGHT);
+    }
+
+    public static DynamicShortestPathTree build(RoadGraph graph, Intersection source, CostMetric metric) {
+        int node = graph.indexOf(source);
+        if (node < 0) {
+            throw new IllegalArgumentException("Source intersection is not part of the graph: " + source);
+        }
+        DynamicShortestPathTree tree = new DynamicShortestPathTree(graph, metric, node);
+        tree.rebuild();
+        return tree;
+    }
+
+    // Full Dijkstra with freshly read weights
+    public void rebuild() {
+        epoch = Road.currentWeightEpoch();
+        for (int arc = 0; arc < weights.length; arc++) {
+            weights[arc] = metric.cost(graph, arc);
+        }
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(parentArcs, -1);
+        heap.clear();
+        distances[source] = 0.0;
+        heap.insertOrDecrease(source, 0.0);
+        lastSettled = settle();
+    }
+
+    /**
+     * Re-read the weight of every road changed since the last refresh or rebuild, and repair the
+     * tree. Returns the number of nodes the repair settled.
+     */
+    public int refresh() {
+        long now = Road.currentWeightEpoch();
+        List<Integer> changed = new ArrayList<>();
+        for (int arc = 0; arc < weights.length; arc++) {
+            if (graph.road(arc).getWeightVersion() > epoch) {
+                changed.add(arc);
+            }
+        }
+        epoch = now;
+        return repair(changed);
+    }
+
+    // Repair after a known set of roads changed; cheaper than refresh() when the caller knows them
+    public int update(Collection<Road> roads) {
+        List<Integer> changed = new ArrayList<>();
+        for (Road road : roads) {
+            for (int arc : graph.arcsOf(road)) changed.add(arc);
+        }
+        return repair(changed);
+    }
+
+    private int repair(List<Integer> candidates) {
+        // Keep only arcs whose weight really moved, remembering the old value
+        int count = 0;
+        int[] arcs = new int[candidates.size()];
+        double[] oldWeights = new double[candidates.size()];
+        for (int arc : candidates) {
+            double weight = metric.cost(graph, arc);
+            if (Double.compare(weight, weights[arc]) != 0) {
+                arcs[count] = arc;
+                oldWeights[count++] = weights[arc];
+                weights[arc] = weight;
+            }
+        }
+        if (count == 0) {
+            lastSettled = 0;
+            return 0;
+        }
+        if (count > REBUILD_FRACTION * weights.length) {
+            rebuild();
+            return lastSettled;
+        }
+
+        heap.clear();
+        // Increases: detach the subtree hanging below every tree arc that got more expensive
+        List<Integer> subtree = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int arc = arcs[i];
+            int head = graph.target(arc);
+            if (weights[arc] > oldWeights[i] && parentArcs[head] == arc && !detached[head]) {
+                collectSubtree(head, subtree);
+            }
+        }
+        for (int node : subtree) {
+            distances[node] = Double.POSITIVE_INFINITY;
+            parentArcs[node] = -1;
+        }
+        for (int node : subtree) {
+            // Best way back in from the part of the tree that is still valid
+            for (int slot = graph.firstInArc(node); slot < graph.endInArc(node); slot++) {
+                int arc = graph.inArc(slot);
+                int tail = graph.source(arc);
+                if (detached[tail]) continue;
+                double candidate = distances[tail] + weights[arc];
+                if (candidate < distances[node]) {
+                    distances[node] = candidate;
+                    parentArcs[node] = arc;
+                }
+            }
+            if (distances[node] < Double.POSITIVE_INFINITY) {
+                heap.insertOrDecrease(node, distances[node]);
+            }
+        }
+        for (int node : subtree) {
+            detached[node] = false;
+        }
+
+        // Decreases: seed every head the cheaper arc now improves
+        for (int i = 0; i < count; i++) {
+            int arc = arcs[i];
+            if (weights[arc] >= oldWeights[i]) continue;
+            int head = graph.target(arc);
+            double candidate = distances[graph.source(arc)] + weights[arc];
+            if (candidate < distances[head]) {
+                distances[head] = candidate;
+                parentArcs[head] = arc;
+                heap.insertOrDecrease(head, candidate);
+            }
+        }
+
+        lastSettled = settle();
+        return lastSettled;
+    }
+
+    // Mark root and every node below it in the tree as detached, appending them to `out`
+    private void collectSubtree(int root, List<Integer> out) {
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        detached[root] = true;
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            out.add(node);
+            for (int arc = graph.firstArc(node); arc < graph.endArc(node); arc++) {
+                int child = graph.target(arc);
+                if (parentArcs[child] == arc && !detached[child]) {
+                    detached[child] = true;
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    // Dijkstra from whatever is queued; labels not on the heap are taken as final
+    private int settle() {
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            settled++;
+            double currentDist = distances[current];
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int neighbor = graph.target(arc);
+                double newDist = currentDist + weights[arc];
+                if (newDist < distances[neighbor]) {
+                    distances[neighbor] = newDist;
+                    parentArcs[neighbor] = arc;
+                    heap.insertOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+        return settled;
+    }
+
+    public Intersection getSource() {
+        return graph.intersection(source);
+    }
+
+    public CostMetric getMetric() {
+        return metric;
+    }
+
+    // Nodes settled by the last rebuild, refresh or update
+    public int getLastSettled() {
+        return lastSettled;
+    }
+
+    // Cost from the source, infinity if unreachable or not in the graph
+    public double distance(Intersection destination) {
+        int node = graph.indexOf(destination);
+        return node < 0 ? Double.POSITIVE_INFINITY : distances[node];
+    }
+
+    // Roads from the source along the tree; empty if unreachable
+    public List<Road> route(Intersection destination) {
+        List<Road> path = new ArrayList<>();
+        int node = graph.indexOf(destination);
+        if (node < 0 || distances[node] == Double.POSITIVE_INFINITY) {
+            return path;
+        }
+        for (int arc; (arc = parentArcs[node]) >= 0; node = graph.source(arc)) {
+            path.add(graph.road(arc));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
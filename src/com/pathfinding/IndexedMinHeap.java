@@ -0,0 +1,148 @@
+package com.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over int node ids with double keys and O(log n) decrease-key.
+ * Each node appears at most once; its slot in the heap is tracked in a position array,
+ * so the heap never allocates once it has been sized for a graph.
+ */
+final class IndexedMinHeap {
+    private final int[] heap;      // heap[i] = node stored in slot i
+    private final int[] position;  // position[node] = slot of node, or -1 if absent
+    private final double[] keys;   // keys[node] = current priority of node
+    private int size;
+
+    IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.position = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    int capacity() {
+        return heap.length;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int node) {
+        return position[node] >= 0;
+    }
+
+    double minKey() {
+        return keys[heap[0]];
+    }
+
+    double key(int node) {
+        return keys[node];
+    }
+
+    // Insert a node, or lower its key if it is already queued with a larger one
+    void insertOrDecrease(int node, double key) {
+        int slot = position[node];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = node;
+            position[node] = slot;
+            keys[node] = key;
+            siftUp(slot);
+        } else if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(slot);
+        }
+    }
+
+    // Change the key of a queued node in either direction, inserting it if absent
+    void update(int node, double key) {
+        int slot = position[node];
+        if (slot < 0) {
+            insertOrDecrease(node, key);
+        } else {
+            double old = keys[node];
+            keys[node] = key;
+            if (key < old) {
+                siftUp(slot);
+            } else {
+                siftDown(slot);
+            }
+        }
+    }
+
+    int poll() {
+        int top = heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    void remove(int node) {
+        int slot = position[node];
+        if (slot >= 0) {
+            removeAt(slot);
+        }
+    }
+
+    // Empty the heap, touching only the slots that are in use
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int slot) {
+        int node = heap[slot];
+        position[node] = -1;
+        size--;
+        if (slot == size) return;
+
+        int last = heap[size];
+        heap[slot] = last;
+        position[last] = slot;
+        siftDown(slot);
+        if (heap[slot] == last) {
+            siftUp(slot);
+        }
+    }
+
+    private void siftUp(int slot) {
+        int node = heap[slot];
+        double key = keys[node];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (keys[parentNode] <= key) break;
+            heap[slot] = parentNode;
+            position[parentNode] = slot;
+            slot = parent;
+        }
+        heap[slot] = node;
+        position[node] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int node = heap[slot];
+        double key = keys[node];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childNode = heap[child];
+            if (key <= keys[childNode]) break;
+            heap[slot] = childNode;
+            position[childNode] = slot;
+            slot = child;
+        }
+        heap[slot] = node;
+        position[node] = slot;
+    }
+}
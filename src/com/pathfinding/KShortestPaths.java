@@ -0,0 +1,214 @@
+package com.pathfinding;
+
+import com.model.Road;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Yen's algorithm for the k shortest loopless paths on a {@link CompactCityGraph}.
+ * Edges and nodes are removed for a spur search by masking them in per-query bitsets, so the
+ * shared road list and the graph snapshot are never modified and concurrent readers always
+ * see every road. Spur paths are joined to their root path using the root's cached prefix
+ * cost instead of re-summing it. Search and candidate ranking both use the snapshot's
+ * {@link CostMetric}, and every path caches its total, so the candidate heap never re-sums a path.
+ * <p>
+ * One backward Dijkstra from the destination yields the exact unmasked distance to it from
+ * every node. Masking only removes arcs, so that distance is a consistent A* heuristic for
+ * every spur search, which then expands little more than the spur path itself.
+ */
+final class KShortestPaths {
+    // Rounds with fewer spur nodes than this are not worth handing to an executor
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    // Per-thread arc and node masks, always left cleared between spur searches
+    private static final ThreadLocal<BitSet[]> MASKS = ThreadLocal.withInitial(() -> new BitSet[]{new BitSet(), new BitSet()});
+
+    private KShortestPaths() {
+    }
+
+    static List<RoutePath> find(CompactCityGraph graph, int source, int target, int k) {
+        return find(graph, source, target, k, null);
+    }
+
+    /**
+     * Spur searches of one round are independent; with an executor they run concurrently,
+     * each on its own thread's workspace and masks. Results are merged in spur order, so the
+     * output is identical to the sequential run.
+     */
+    static List<RoutePath> find(CompactCityGraph graph, int source, int target, int k, ExecutorService executor) {
+        List<RoutePath> result = new ArrayList<>();
+        if (k <= 0) return result;
+
+        // Distances to the destination, kept for the whole query as the spur heuristic
+        SearchWorkspace toTarget = PathFinder.backwardWorkspaceFor(graph.nodeCount());
+        reverseTree(graph, target, toTarget);
+        if (source == target || toTarget.distance(source) == Double.POSITIVE_INFINITY) return result;
+
+        int length = 0;
+        for (int node = source; node != target; node = graph.target(toTarget.predecessorArc(node))) {
+            length++;
+        }
+        int[] firstArcs = new int[length];
+        for (int i = 0, node = source; node != target; node = graph.target(firstArcs[i++])) {
+            firstArcs[i] = toTarget.predecessorArc(node);
+        }
+        result.add(new RoutePath(graph, firstArcs, source));
+
+        PriorityQueue<RoutePath> candidates = new PriorityQueue<>(
+                Comparator.comparingDouble(RoutePath::getCost));
+        Set<RoutePath> seen = new HashSet<>(result);
+
+        for (int i = 1; i < k; i++) {
+            RoutePath previous = result.get(i - 1);
+            // Lawler's rule: spurs before the deviation node were already tried for the parent path
+            int first = previous.deviation;
+            RoutePath[] spurs = new RoutePath[previous.length() - first];
+
+            if (executor != null && spurs.length >= PARALLEL_THRESHOLD) {
+                List<Callable<RoutePath>> tasks = new ArrayList<>(spurs.length);
+                for (int j = first; j < previous.length(); j++) {
+                    int spurIndex = j;
+                    tasks.add(() -> spur(graph, result, previous, spurIndex, target, toTarget));
+                }
+                List<Future<RoutePath>> futures = invokeAll(executor, tasks);
+                for (int j = 0; j < spurs.length; j++) {
+                    spurs[j] = join(futures.get(j));
+                }
+            } else {
+                for (int j = first; j < previous.length(); j++) {
+                    spurs[j - first] = spur(graph, result, previous, j, target, toTarget);
+                }
+            }
+
+            // Merge in spur order so the candidate heap sees exactly the sequential insertion order
+            for (RoutePath candidate : spurs) {
+                if (candidate != null && seen.add(candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+
+            if (candidates.isEmpty()) break;
+            result.add(candidates.poll());
+        }
+        return result;
+    }
+
+    // Best deviation from `previous` at its j-th node, or null if the masks disconnect the target
+    private static RoutePath spur(CompactCityGraph graph, List<RoutePath> accepted, RoutePath previous, int j, int target,
+                             SearchWorkspace toTarget) {
+        BitSet[] masks = MASKS.get();
+        BitSet bannedArcs = masks[0];
+        BitSet bannedNodes = masks[1];
+        int spurNode = previous.nodes[j];
+
+        // Mask the next arc of every accepted path sharing this root, and the root's nodes
+        for (RoutePath path : accepted) {
+            if (path.length() > j && previous.sharesPrefix(path, j)) {
+                bannedArcs.set(path.arcs[j]);
+            }
+        }
+        for (int r = 0; r < j; r++) {
+            bannedNodes.set(previous.nodes[r]);
+        }
+
+        SearchWorkspace workspace = PathFinder.workspaceFor(graph.nodeCount());
+        spurSearch(graph, spurNode, target, workspace, toTarget, bannedArcs, bannedNodes);
+        RoutePath candidate = workspace.reached(target)
+                ? new RoutePath(graph, previous, j, routeArcs(graph, workspace, spurNode, target))
+                : null;
+
+        // Unmask only what was set, so each spur costs O(path) rather than O(graph)
+        for (RoutePath path : accepted) {
+            if (path.length() > j) bannedArcs.clear(path.arcs[j]);
+        }
+        for (int r = 0; r < j; r++) {
+            bannedNodes.clear(previous.nodes[r]);
+        }
+        return candidate;
+    }
+
+    private static List<Future<RoutePath>> invokeAll(ExecutorService executor, List<Callable<RoutePath>> tasks) {
+        try {
+            return executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing spur paths", e);
+        }
+    }
+
+    private static RoutePath join(Future<RoutePath> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing spur paths", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Spur path search failed", e.getCause());
+        }
+    }
+
+    // Full backward Dijkstra: distance(v) is the cost from v to target, predecessorArc(v) leaves v
+    private static void reverseTree(CompactCityGraph graph, int target, SearchWorkspace workspace) {
+        IndexedMinHeap heap = workspace.heap;
+        workspace.label(target, 0.0, -1);
+        heap.insertOrDecrease(target, 0.0);
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            workspace.settled++;
+            double currentDist = workspace.distance(current);
+            for (int slot = graph.firstInArc(current); slot < graph.endInArc(current); slot++) {
+                int arc = graph.inArc(slot);
+                int neighbor = graph.source(arc);
+                double newDist = currentDist + graph.weight(arc);
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+    }
+
+    // A* from the spur node over unmasked arcs, guided by the exact unmasked distance to target
+    private static void spurSearch(CompactCityGraph graph, int spurNode, int target, SearchWorkspace workspace,
+                                   SearchWorkspace toTarget, BitSet bannedArcs, BitSet bannedNodes) {
+        IndexedMinHeap heap = workspace.heap;
+        workspace.label(spurNode, 0.0, -1);
+        heap.insertOrDecrease(spurNode, toTarget.distance(spurNode));
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            workspace.settled++;
+            if (current == target) break;
+            double currentDist = workspace.distance(current);
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int neighbor = graph.target(arc);
+                if (bannedArcs.get(arc) || bannedNodes.get(neighbor)) continue;
+                double remaining = toTarget.distance(neighbor);
+                if (remaining == Double.POSITIVE_INFINITY) continue; // Cannot reach target at all
+                double newDist = currentDist + graph.weight(arc);
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist + remaining);
+                }
+            }
+        }
+    }
+
+    // Arcs of the search tree path from source to target
+    private static int[] routeArcs(CompactCityGraph graph, SearchWorkspace workspace, int source, int target) {
+        int count = 0;
+        for (int node = target; node != source; node = graph.source(workspace.predecessorArc(node))) {
+            count++;
+        }
+        int[] arcs = new int[count];
+        for (int node = target; node != source; ) {
+            int arc = workspace.predecessorArc(node);
+            arcs[--count] = arc;
+            node = graph.source(arc);
+        }
+        return arcs;
+    }
+}
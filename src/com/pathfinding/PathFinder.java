@@ -4,119 +4,220 @@ import com.model.Intersection;
 import com.model.Road;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 public class PathFinder {
 
-    private static class Node {
-        Intersection intersection;
-        double distance;
+    // Reusable search workspaces per thread (forward and backward), grown when a larger graph is routed
+    private static final ThreadLocal<SearchWorkspace[]> WORKSPACES = ThreadLocal.withInitial(() -> new SearchWorkspace[2]);
 
-        Node(Intersection intersection, double distance) {
-            this.intersection = intersection;
-            this.distance = distance;
+    static SearchWorkspace workspaceFor(int nodeCount) {
+        return workspaceFor(nodeCount, 0);
+    }
+
+    static SearchWorkspace backwardWorkspaceFor(int nodeCount) {
+        return workspaceFor(nodeCount, 1);
+    }
+
+    private static SearchWorkspace workspaceFor(int nodeCount, int slot) {
+        SearchWorkspace[] workspaces = WORKSPACES.get();
+        SearchWorkspace workspace = workspaces[slot];
+        if (workspace == null || workspace.capacity() < nodeCount) {
+            workspace = new SearchWorkspace(nodeCount);
+            workspaces[slot] = workspace;
         }
+        workspace.reset();
+        return workspace;
     }
 
     public static Map<Intersection, Road> findShortestPath(Intersection start, Intersection destination, List<Road> roads) {
-        Map<Intersection, Double> distances = new HashMap<>();
+        return findShortestPath(start, destination, RoadGraph.of(roads));
+    }
+
+    // Dijkstra over a prebuilt adjacency index: only the outgoing arcs of each popped node are scanned
+    public static Map<Intersection, Road> findShortestPath(Intersection start, Intersection destination, RoadGraph graph) {
         Map<Intersection, Road> previousRoads = new HashMap<>();
-        PriorityQueue<Node> pq = new PriorityQueue<>(Comparator.comparingDouble(n -> n.distance));
+        CompactCityGraph snapshot = CompactCityGraph.snapshot(graph);
+        int source = snapshot.nodeOf(start);
+        if (source < 0) return previousRoads;
 
-        for (Road road : roads) {
-            distances.put(road.getSource(), Double.POSITIVE_INFINITY);
-            distances.put(road.getDestination(), Double.POSITIVE_INFINITY);
-        }
-        distances.put(start, 0.0);
-        pq.add(new Node(start, 0));
-
-        while (!pq.isEmpty()) {
-            Node current = pq.poll();
-            if (current.intersection.equals(destination)) break;
-
-            for (Road road : roads) {
-                if (road.getSource().equals(current.intersection)) {
-                    Intersection neighbor = road.getDestination();
-                    double newDist = distances.get(current.intersection) + road.calculateWeight();
-
-                    if (newDist < distances.get(neighbor)) {
-                        distances.put(neighbor, newDist);
-                        pq.add(new Node(neighbor, newDist));
-                        previousRoads.put(neighbor, road);
-                    }
-                }
+        SearchWorkspace workspace = workspaceFor(snapshot.nodeCount());
+        dijkstra(snapshot, source, snapshot.nodeOf(destination), workspace);
+
+        for (int v = 0; v < snapshot.nodeCount(); v++) {
+            int arc = workspace.predecessorArc(v);
+            if (arc >= 0) {
+                previousRoads.put(snapshot.intersection(v), snapshot.road(arc));
             }
         }
-
         return previousRoads;
     }
 
-    public static List<List<Road>> findTopKPaths(Intersection start, Intersection end, List<Road> allRoads, int k) {
-        List<List<Road>> resultPaths = new ArrayList<>();
-        Map<Intersection, Road> firstPathMap = findShortestPath(start, end, allRoads);
-        if (firstPathMap == null || !firstPathMap.containsKey(end)) return resultPaths;
-
-        List<Road> firstPath = reconstructPath(firstPathMap, start, end);
-        resultPaths.add(firstPath);
+    // Shortest route on a weight snapshot; empty if the destination is unreachable
+    public static List<Road> findShortestRoute(Intersection start, Intersection destination, CompactCityGraph graph) {
+        int source = graph.nodeOf(start);
+        int target = graph.nodeOf(destination);
+        if (source < 0 || target < 0) return new ArrayList<>();
 
-        PriorityQueue<List<Road>> candidates = new PriorityQueue<>(Comparator.comparingDouble(PathFinder::calculatePathDistance));
+        SearchWorkspace workspace = workspaceFor(graph.nodeCount());
+        dijkstra(graph, source, target, workspace);
+        return reconstructRoute(graph, workspace, target);
+    }
 
-        for (int i = 1; i < k; i++) {
-            List<Road> previousPath = resultPaths.get(i - 1);
+    // Point-to-point query with the chosen algorithm, reporting cost and search effort
+    public static RouteResult route(Intersection start, Intersection destination, CompactCityGraph graph,
+                                    RouteResult.Algorithm algorithm) {
+        int source = graph.nodeOf(start);
+        int target = graph.nodeOf(destination);
+        if (source < 0 || target < 0) {
+            return new RouteResult(new ArrayList<>(), Double.POSITIVE_INFINITY, algorithm, 0);
+        }
 
-            for (int j = 0; j < previousPath.size(); j++) {
-                Intersection spurNode = previousPath.get(j).getSource();
-                List<Road> rootPath = previousPath.subList(0, j);
+        SearchWorkspace workspace = workspaceFor(graph.nodeCount());
+        if (algorithm == RouteResult.Algorithm.BIDIRECTIONAL_DIJKSTRA) {
+            SearchWorkspace backward = backwardWorkspaceFor(graph.nodeCount());
+            int meeting = BidirectionalDijkstra.search(graph, source, target, workspace, backward);
+            int settled = workspace.settled + backward.settled;
+            if (meeting < 0) {
+                return new RouteResult(new ArrayList<>(), Double.POSITIVE_INFINITY, algorithm, settled);
+            }
+            List<Road> path = reconstructRoute(graph, workspace, meeting);
+            int current = meeting;
+            int arc;
+            while ((arc = backward.predecessorArc(current)) >= 0) {
+                path.add(graph.road(arc));
+                current = graph.target(arc);
+            }
+            return new RouteResult(path, workspace.distance(meeting) + backward.distance(meeting), algorithm, settled);
+        } else if (algorithm == RouteResult.Algorithm.A_STAR) {
+            aStar(graph, source, target, workspace);
+        } else {
+            dijkstra(graph, source, target, workspace);
+        }
+        return new RouteResult(reconstructRoute(graph, workspace, target), workspace.distance(target),
+                algorithm, workspace.settled);
+    }
 
-                Set<Road> removedEdges = new HashSet<>();
-                for (List<Road> path : resultPaths) {
-                    if (path.size() > j && path.subList(0, j).equals(rootPath)) {
-                        Road toRemove = path.get(j);
-                        allRoads.remove(toRemove);
-                        removedEdges.add(toRemove);
-                    }
-                }
+    /**
+     * Fastest route leaving at absolute simulation time `departure`, waiting out red lights by
+     * their phase at the moment of arrival rather than an average penalty. The graph must be a
+     * {@link CostMetric#DRIVING_TIME} snapshot so that no light is counted twice. The cost is
+     * the travel time in seconds, waits included.
+     */
+    public static RouteResult routeDepartingAt(Intersection start, Intersection destination, CompactCityGraph graph,
+                                               double departure) {
+        if (graph.getMetric() != CostMetric.DRIVING_TIME) {
+            throw new IllegalArgumentException("Time-dependent routing needs a DRIVING_TIME snapshot, got " + graph.getMetric());
+        }
+        RouteResult.Algorithm algorithm = RouteResult.Algorithm.TIME_DEPENDENT_A_STAR;
+        int source = graph.nodeOf(start);
+        int target = graph.nodeOf(destination);
+        if (source < 0 || target < 0) {
+            return new RouteResult(new ArrayList<>(), Double.POSITIVE_INFINITY, algorithm, 0);
+        }
 
-                Map<Intersection, Road> spurPathMap = findShortestPath(spurNode, end, allRoads);
-                if (spurPathMap != null && spurPathMap.containsKey(end)) {
-                    List<Road> spurPath = reconstructPath(spurPathMap, spurNode, end);
+        SearchWorkspace workspace = workspaceFor(graph.nodeCount());
+        TimeDependentSearch.search(graph, source, target, departure, workspace);
+        return new RouteResult(reconstructRoute(graph, workspace, target), workspace.distance(target),
+                algorithm, workspace.settled);
+    }
 
-                    List<Road> totalPath = new ArrayList<>(rootPath);
-                    totalPath.addAll(spurPath);
+    // Label-setting search from source; stops once target is settled (target < 0 explores everything)
+    static void dijkstra(CompactCityGraph graph, int source, int target, SearchWorkspace workspace) {
+        dijkstra(graph, source, target, workspace, null, null);
+    }
 
-                    if (!containsPath(resultPaths, totalPath) && !containsPath(candidates, totalPath)) {
-                        candidates.add(totalPath);
-                    }
+    // Same search with masked arcs and nodes left out; null masks exclude nothing
+    static void dijkstra(CompactCityGraph graph, int source, int target, SearchWorkspace workspace,
+                         BitSet bannedArcs, BitSet bannedNodes) {
+        IndexedMinHeap heap = workspace.heap;
+        workspace.label(source, 0.0, -1);
+        heap.insertOrDecrease(source, 0.0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            workspace.settled++;
+            if (current == target) break;
+
+            double currentDist = workspace.distance(current);
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int neighbor = graph.target(arc);
+                if (bannedArcs != null && bannedArcs.get(arc)) continue;
+                if (bannedNodes != null && bannedNodes.get(neighbor)) continue;
+                double newDist = currentDist + graph.weight(arc);
+
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist);
                 }
-
-                allRoads.addAll(removedEdges);
             }
-
-            if (candidates.isEmpty()) break;
-            resultPaths.add(candidates.poll());
         }
+    }
 
-        return resultPaths;
+    // A* towards target, guided by the straight-line lower bound of CompactCityGraph.minCostPerDistance
+    static void aStar(CompactCityGraph graph, int source, int target, SearchWorkspace workspace) {
+        IndexedMinHeap heap = workspace.heap;
+        double scale = graph.minCostPerDistance();
+        workspace.label(source, 0.0, -1);
+        heap.insertOrDecrease(source, scale * graph.euclideanDistance(source, target));
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            workspace.settled++;
+            if (current == target) break;
+
+            double currentDist = workspace.distance(current);
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int neighbor = graph.target(arc);
+                double newDist = currentDist + graph.weight(arc);
+
+                if (newDist < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, newDist, arc);
+                    heap.insertOrDecrease(neighbor, newDist + scale * graph.euclideanDistance(neighbor, target));
+                }
+            }
+        }
     }
 
-    private static List<Road> reconstructPath(Map<Intersection, Road> previousRoads, Intersection start, Intersection end) {
+    // Walk predecessor arcs back from target; empty if target was not reached
+    static List<Road> reconstructRoute(CompactCityGraph graph, SearchWorkspace workspace, int target) {
         List<Road> path = new ArrayList<>();
-        Intersection current = end;
-
-        while (previousRoads.containsKey(current)) {
-            Road road = previousRoads.get(current);
-            path.add(road);
-            current = road.getSource();
+        int current = target;
+        int arc;
+        while ((arc = workspace.predecessorArc(current)) >= 0) {
+            path.add(graph.road(arc));
+            current = graph.source(arc);
         }
-
         Collections.reverse(path);
         return path;
     }
 
-    private static boolean containsPath(Collection<List<Road>> paths, List<Road> newPath) {
-        for (List<Road> path : paths) {
-            if (path.equals(newPath)) return true;
+    public static List<List<Road>> findTopKPaths(Intersection start, Intersection end, List<Road> allRoads, int k) {
+        return findTopKPaths(start, end, CompactCityGraph.snapshot(RoadGraph.of(allRoads)), k);
+    }
+
+    // Yen's k shortest loopless paths under the snapshot's cost metric; the road list and snapshot are left untouched
+    public static List<List<Road>> findTopKPaths(Intersection start, Intersection end, CompactCityGraph graph, int k) {
+        return findTopKPaths(start, end, graph, k, null);
+    }
+
+    // Same paths, with the spur searches of each round fanned out over an executor (e.g. a ForkJoinPool)
+    public static List<List<Road>> findTopKPaths(Intersection start, Intersection end, CompactCityGraph graph, int k,
+                                                 ExecutorService executor) {
+        List<List<Road>> resultPaths = new ArrayList<>();
+        for (RoutePath path : findTopKRoutes(start, end, graph, k, executor)) {
+            resultPaths.add(new ArrayList<>(path.getRoads()));
         }
-        return false;
+        return resultPaths;
+    }
+
+    // K shortest paths as RoutePaths, each carrying its cost under graph.getMetric()
+    public static List<RoutePath> findTopKRoutes(Intersection start, Intersection end, CompactCityGraph graph, int k,
+                                                 ExecutorService executor) {
+        int source = graph.nodeOf(start);
+        int target = graph.nodeOf(end);
+        if (source < 0 || target < 0) return new ArrayList<>();
+        return KShortestPaths.find(graph, source, target, k, executor);
     }
 
     public static double calculatePathDistance(List<Road> path) {
@@ -0,0 +1,268 @@
+package com.pathfinding;
+
+import com.model.CityMap;
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.*;
+
+/**
+ * RoadGraph is an immutable outgoing-adjacency index over the roads of a city.
+ * Intersections are mapped to dense indices 0..n-1 and the outgoing arcs of node v
+ * are stored contiguously (CSR layout) in the range offsets[v] .. offsets[v + 1] - 1.
+ * A reverse index lists the incoming arcs of each node the same way, for searches that
+ * run backwards from a destination.
+ * <p>
+ * A one-way road becomes a single arc from its source to its destination. A two-way road
+ * becomes two arcs, one per direction, which share the same Road object. The reverse arc is
+ * flagged by {@link #isReverse(int)}, and its cost comes from the road's reverse-direction
+ * traffic.
+ */
+public class RoadGraph {
+    private static final int[] NO_ARCS = new int[0];
+
+    private final Intersection[] nodes;
+    private final double[] xs;     // xs[v], ys[v] = coordinates of node v
+    private final double[] ys;
+    private final Map<Intersection, Integer> indexByIntersection;
+    private final int[] offsets;   // offsets[v] = first outgoing arc of node v, length n + 1
+    private final int[] sources;   // sources[a] = tail node of arc a
+    private final int[] targets;   // targets[a] = head node of arc a
+    private final Road[] arcRoads; // arcRoads[a] = road travelled by arc a
+    private final boolean[] reverse; // reverse[a] = arc a runs from the road's destination to its source
+    private final int[] inOffsets; // inOffsets[v] = first slot of node v in inArcs, length n + 1
+    private final int[] inArcs;    // arcs grouped by head node
+    private volatile Map<Road, int[]> arcsByRoad; // Built on first use by arcsOf
+    private volatile WeightTable weightTable;     // Built on first use by weightTable
+
+    private RoadGraph(Collection<Intersection> intersections, List<Road> roads) {
+        Map<Intersection, Integer> index = new HashMap<>();
+        List<Intersection> ordered = new ArrayList<>();
+        for (Intersection intersection : intersections) {
+            addNode(intersection, index, ordered);
+        }
+        // Roads may reference intersections that were never registered on the map
+        for (Road road : roads) {
+            addNode(road.getSource(), index, ordered);
+            addNode(road.getDestination(), index, ordered);
+        }
+
+        int n = ordered.size();
+        int[] degree = new int[n + 1];
+        int arcCount = 0;
+        for (Road road : roads) {
+            degree[index.get(road.getSource())]++;
+            arcCount++;
+            if (hasReverseArc(road)) {
+                degree[index.get(road.getDestination())]++;
+                arcCount++;
+            }
+        }
+
+        int[] first = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            first[v + 1] = first[v] + degree[v];
+        }
+
+        int[] next = Arrays.copyOf(first, n);
+        int[] tails = new int[arcCount];
+        int[] heads = new int[arcCount];
+        Road[] arcs = new Road[arcCount];
+        boolean[] reversed = new boolean[arcCount];
+        // Filling in road-list order keeps arcs of each node in their original order
+        for (Road road : roads) {
+            int from = index.get(road.getSource());
+            int to = index.get(road.getDestination());
+            int arc = next[from]++;
+            tails[arc] = from;
+            heads[arc] = to;
+            arcs[arc] = road;
+            if (hasReverseArc(road)) {
+                arc = next[to]++;
+                tails[arc] = to;
+                heads[arc] = from;
+                arcs[arc] = road;
+                reversed[arc] = true;
+            }
+        }
+
+        int[] inFirst = new int[n + 1];
+        for (int head : heads) {
+            inFirst[head + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inFirst[v + 1] += inFirst[v];
+        }
+        int[] inNext = Arrays.copyOf(inFirst, n);
+        int[] incoming = new int[heads.length];
+        for (int arc = 0; arc < heads.length; arc++) {
+            incoming[inNext[heads[arc]]++] = arc;
+        }
+
+        this.nodes = ordered.toArray(new Intersection[0]);
+        this.xs = new double[n];
+        this.ys = new double[n];
+        for (int v = 0; v < n; v++) {
+            xs[v] = nodes[v].getX();
+            ys[v] = nodes[v].getY();
+        }
+        this.indexByIntersection = index;
+        this.offsets = first;
+        this.sources = tails;
+        this.targets = heads;
+        this.arcRoads = arcs;
+        this.reverse = reversed;
+        this.inOffsets = inFirst;
+        this.inArcs = incoming;
+    }
+
+    // Two-way roads are travelled both ways; a loop road would only duplicate its forward arc
+    private static boolean hasReverseArc(Road road) {
+        return !road.isOneWay() && road.getSource() != road.getDestination();
+    }
+
+    private static void addNode(Intersection intersection, Map<Intersection, Integer> index, List<Intersection> ordered) {
+        if (!index.containsKey(intersection)) {
+            index.put(intersection, ordered.size());
+            ordered.add(intersection);
+        }
+    }
+
+    // Build the index for every intersection and road of a city map
+    public static RoadGraph of(CityMap cityMap) {
+        return new RoadGraph(cityMap.getIntersections(), cityMap.getRoads());
+    }
+
+    // Build the index for a plain list of roads (nodes are the road endpoints)
+    public static RoadGraph of(List<Road> roads) {
+        return new RoadGraph(Collections.emptyList(), roads);
+    }
+
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public int arcCount() {
+        return targets.length;
+    }
+
+    // Dense index of an intersection, or -1 if it is not part of the graph
+    public int indexOf(Intersection intersection) {
+        Integer index = indexByIntersection.get(intersection);
+        return index != null ? index : -1;
+    }
+
+    public Intersection intersection(int node) {
+        return nodes[node];
+    }
+
+    public double x(int node) {
+        return xs[node];
+    }
+
+    public double y(int node) {
+        return ys[node];
+    }
+
+    // Straight-line distance between two nodes in map coordinates
+    public double euclideanDistance(int from, int to) {
+        double dx = xs[from] - xs[to];
+        double dy = ys[from] - ys[to];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public int firstArc(int node) {
+        return offsets[node];
+    }
+
+    public int endArc(int node) {
+        return offsets[node + 1];
+    }
+
+    // Incoming arcs of node v are inArc(i) for firstInArc(v) <= i < endInArc(v)
+    public int firstInArc(int node) {
+        return inOffsets[node];
+    }
+
+    public int endInArc(int node) {
+        return inOffsets[node + 1];
+    }
+
+    public int inArc(int slot) {
+        return inArcs[slot];
+    }
+
+    public int source(int arc) {
+        return sources[arc];
+    }
+
+    public int target(int arc) {
+        return targets[arc];
+    }
+
+    public Road road(int arc) {
+        return arcRoads[arc];
+    }
+
+    // Arcs travelling the given road, empty if the road is not in this graph
+    public int[] arcsOf(Road road) {
+        Map<Road, int[]> index = arcsByRoad;
+        if (index == null) {
+            index = new IdentityHashMap<>();
+            for (int arc = 0; arc < arcRoads.length; arc++) {
+                int[] previous = index.get(arcRoads[arc]);
+                int[] arcs = previous == null ? new int[1] : Arrays.copyOf(previous, previous.length + 1);
+                arcs[arcs.length - 1] = arc;
+                index.put(arcRoads[arc], arcs);
+            }
+            arcsByRoad = index;
+        }
+        return index.getOrDefault(road, NO_ARCS);
+    }
+
+    // Current (traffic-aware) cost of travelling an arc
+    public double weight(int arc) {
+        return arcRoads[arc].calculateWeight(reverse[arc]);
+    }
+
+    // True if the arc travels its road from destination to source
+    public boolean isReverse(int arc) {
+        return reverse[arc];
+    }
+
+    // Batch evaluator of the current weights of all arcs, shared by every snapshot of this graph
+    public WeightTable weightTable() {
+        WeightTable table = weightTable;
+        if (table == null) {
+            synchronized (this) {
+                table = weightTable;
+                if (table == null) {
+                    table = new WeightTable(this);
+                    weightTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    // Raw CSR arrays, shared read-only with the snapshots built on top of this index
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] inOffsets() {
+        return inOffsets;
+    }
+
+    int[] inArcs() {
+        return inArcs;
+    }
+
+    int[] sources() {
+        return sources;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+}
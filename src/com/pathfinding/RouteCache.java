@@ -0,0 +1,163 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of k-shortest-path results keyed by start, destination, k and cost metric.
+ * <p>
+ * Every entry remembers the road weight epoch ({@link Road#currentWeightEpoch()}) it was
+ * computed or last validated at. If no road weight changed since then the entry is served
+ * as is. Otherwise only the roads on the cached paths are checked: if none of them changed,
+ * the entry is re-stamped and served, and if any did, the entry is dropped and recomputed.
+ * Changes to roads off the cached paths do not invalidate it, so a road that gets cheaper
+ * elsewhere is only picked up once the entry is recomputed or evicted.
+ */
+public final class RouteCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private static final class Key {
+        final Intersection start;
+        final Intersection destination;
+        final int k;
+        final CostMetric metric;
+
+        Key(Intersection start, Intersection destination, int k, CostMetric metric) {
+            this.start = start;
+            this.destination = destination;
+            this.k = k;
+            this.metric = metric;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return start == other.start && destination == other.destination && k == other.k && metric == other.metric;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(start), System.identityHashCode(destination), k, metric);
+        }
+    }
+
+    private static final class Entry {
+        final List<RoutePath> paths;
+        final Road[] roads; // Distinct roads over all cached paths
+        long epoch;
+
+        Entry(List<RoutePath> paths, long epoch) {
+            this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
+            Set<Road> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (RoutePath path : paths) {
+                distinct.addAll(path.getRoads());
+            }
+            this.roads = distinct.toArray(new Road[0]);
+            this.epoch = epoch;
+        }
+
+        // True if no road on the cached paths changed after the entry's epoch
+        boolean stillValid() {
+            for (Road road : roads) {
+                if (road.getWeightVersion() > epoch) return false;
+            }
+            return true;
+        }
+    }
+
+    public RouteCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RouteCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > RouteCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return the cached paths for the query, revalidating them against road changes, or run
+     * the loader on a miss and cache its result.
+     */
+    public List<RoutePath> getOrCompute(Intersection start, Intersection destination, int k, CostMetric metric,
+                                        Supplier<List<RoutePath>> loader) {
+        Key key = new Key(start, destination, k, metric);
+        // Read the epoch first: a change racing with the computation leaves the entry stale, never wrongly fresh
+        long epoch = Road.currentWeightEpoch();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.epoch == epoch || entry.stillValid()) {
+                    entry.epoch = epoch;
+                    hits++;
+                    return entry.paths;
+                }
+                entries.remove(key);
+                invalidations++;
+            }
+            misses++;
+        }
+
+        Entry computed = new Entry(loader.get(), epoch);
+        synchronized (this) {
+            entries.put(key, computed);
+        }
+        return computed.paths;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Entries dropped because the cache was full
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Entries dropped because a road on one of their paths changed
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RouteCache{size=%d/%d, hits=%d, misses=%d, evictions=%d, invalidations=%d}",
+                entries.size(), capacity, hits, misses, evictions, invalidations);
+    }
+}
@@ -0,0 +1,115 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A route through a {@link CompactCityGraph} together with its total cost under the
+ * snapshot's {@link CostMetric}. The cost is computed once when the path is built, so ranking
+ * paths never re-sums them. Internally the path is kept as parallel arrays: arcs[i] leads from
+ * nodes[i] to nodes[i + 1] and prefixCost[i] is the cost of the first i arcs.
+ */
+public final class RoutePath {
+    final int[] arcs;
+    final int[] nodes;
+    final double[] prefixCost;
+    final int deviation; // Index of the node where this path left its parent path (Yen)
+    private final List<Road> roads;
+    private final List<Intersection> intersections; // Visited in order; two-way roads may be taken in reverse
+    private final CostMetric metric;
+
+    RoutePath(CompactCityGraph graph, int[] arcs, int source) {
+        this.arcs = arcs;
+        this.deviation = 0;
+        this.metric = graph.getMetric();
+        this.nodes = new int[arcs.length + 1];
+        this.prefixCost = new double[arcs.length + 1];
+        List<Road> path = new ArrayList<>(arcs.length);
+        nodes[0] = source;
+        for (int i = 0; i < arcs.length; i++) {
+            nodes[i + 1] = graph.target(arcs[i]);
+            prefixCost[i + 1] = prefixCost[i] + graph.weight(arcs[i]);
+            path.add(graph.road(arcs[i]));
+        }
+        this.roads = Collections.unmodifiableList(path);
+        this.intersections = intersectionsOf(graph, nodes);
+    }
+
+    // Root path of `root` up to its j-th node, followed by a spur path found from there
+    RoutePath(CompactCityGraph graph, RoutePath root, int j, int[] spurArcs) {
+        int length = j + spurArcs.length;
+        this.deviation = j;
+        this.metric = graph.getMetric();
+        this.arcs = Arrays.copyOf(root.arcs, length);
+        System.arraycopy(spurArcs, 0, arcs, j, spurArcs.length);
+        this.nodes = Arrays.copyOf(root.nodes, length + 1);
+        this.prefixCost = Arrays.copyOf(root.prefixCost, length + 1);
+        List<Road> path = new ArrayList<>(root.roads.subList(0, j));
+        for (int i = j; i < length; i++) {
+            nodes[i + 1] = graph.target(arcs[i]);
+            prefixCost[i + 1] = prefixCost[i] + graph.weight(arcs[i]);
+            path.add(graph.road(arcs[i]));
+        }
+        this.roads = Collections.unmodifiableList(path);
+        this.intersections = intersectionsOf(graph, nodes);
+    }
+
+    private static List<Intersection> intersectionsOf(CompactCityGraph graph, int[] nodes) {
+        List<Intersection> visited = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+            visited.add(graph.intersection(node));
+        }
+        return Collections.unmodifiableList(visited);
+    }
+
+    public List<Road> getRoads() {
+        return roads;
+    }
+
+    // Start, every intersection passed, and destination
+    public List<Intersection> getIntersections() {
+        return intersections;
+    }
+
+    // Cached total cost under getMetric()
+    public double getCost() {
+        return prefixCost[arcs.length];
+    }
+
+    public CostMetric getMetric() {
+        return metric;
+    }
+
+    int length() {
+        return arcs.length;
+    }
+
+    // True if both paths start with the same first j arcs
+    boolean sharesPrefix(RoutePath other, int j) {
+        if (other.arcs.length < j) return false;
+        for (int i = 0; i < j; i++) {
+            if (arcs[i] != other.arcs[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RoutePath && Arrays.equals(arcs, ((RoutePath) o).arcs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(arcs);
+    }
+
+    @Override
+    public String toString() {
+        return metric + " cost=" + getCost() + " " + roads;
+    }
+}
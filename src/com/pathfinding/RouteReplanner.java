@@ -0,0 +1,430 @@
+package com.pathfinding;
+
+import com.model.Intersection;
+import com.model.Road;
+
+import java.util.*;
+
+/**
+ * D* Lite replanning for one active route. The search runs backwards from the destination and
+ * keeps its g/rhs labels between events, so once the vehicle has moved and some roads changed,
+ * {@link #replan()} only re-expands the nodes made inconsistent by those changes instead of
+ * searching again from zero.
+ * <p>
+ * The A* heuristic is the straight-line distance scaled by the cheapest cost per unit distance
+ * over all arcs. If a road later becomes cheaper than that bound the heuristic would
+ * overestimate, so the replanner lowers the bound and starts over once. Every replan records
+ * its wall-clock latency and expansion count.
+ */
+public final class RouteReplanner {
+    private final RoadGraph graph;
+    private final CostMetric metric;
+    private final int goal;
+    private final double[] weights; // Arc weights the labels are consistent with
+    private final double[] g;
+    private final double[] rhs;
+    private final KeyHeap open;
+    private double heuristicScale;
+    private double keyModifier;     // km: heuristic drift accumulated as the vehicle moves
+    private int start;
+    private int lastStart;          // Start at the last replan, for the key modifier
+    private long epoch;
+
+    private int lastExpanded;
+    private long lastReplanNanos;
+    private long totalReplanNanos;
+    private int replanCount;
+    private int restartCount;
+
+    private RouteReplanner(RoadGraph graph, CostMetric metric, int start, int goal) {
+        this.graph = graph;
+        this.metric = metric;
+        this.start = start;
+        this.lastStart = start;
+        this.goal = goal;
+        int n = graph.nodeCount();
+        this.weights = new double[graph.arcCount()];
+        this.g = new double[n];
+        this.rhs = new double[n];
+        this.open = new KeyHeap(n);
+    }
+
+    public static RouteReplanner plan(RoadGraph graph, Intersection start, Intersection destination) {
+        return plan(graph, start, destination, CostMetric.CURRENT_WEIGHT);
+    }
+
+    public static RouteReplanner plan(RoadGraph graph, Intersection start, Intersection destination,
+                                      CostMetric metric) {
+        int startNode = graph.indexOf(start);
+        int goalNode = graph.indexOf(destination);
+        if (startNode < 0 || goalNode < 0) {
+            throw new IllegalArgumentException("Route endpoints must be part of the graph: " + start + " -> " + destination);
+        }
+        RouteReplanner replanner = new RouteReplanner(graph, metric, startNode, goalNode);
+        long begin = System.nanoTime();
+        replanner.restart();
+        replanner.record(System.nanoTime() - begin);
+        return replanner;
+    }
+
+    // Drop every label and search from scratch with freshly read weights
+    private void restart() {
+        epoch = Road.currentWeightEpoch();
+        double scale = Double.POSITIVE_INFINITY;
+        for (int arc = 0; arc < weights.length; arc++) {
+            weights[arc] = metric.cost(graph, arc);
+            double straight = graph.euclideanDistance(graph.source(arc), graph.target(arc));
+            if (straight > 0) {
+                scale = Math.min(scale, weights[arc] / straight);
+            }
+        }
+        heuristicScale = scale == Double.POSITIVE_INFINITY ? 0.0 : scale * (1 - 1e-9);
+        Arrays.fill(g, Double.POSITIVE_INFINITY);
+        Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+        open.clear();
+        keyModifier = 0.0;
+        lastStart = start;
+        rhs[goal] = 0.0;
+        open.insertOrUpdate(goal, heuristic(goal), 0.0);
+        lastExpanded = computeShortestPath();
+    }
+
+    /**
+     * The vehicle reached the given intersection. Labels stay valid; only the key modifier
+     * grows, so the next replan starts from here without redoing earlier work.
+     */
+    public void moveTo(Intersection intersection) {
+        int node = graph.indexOf(intersection);
+        if (node < 0) {
+            throw new IllegalArgumentException("Intersection is not part of the graph: " + intersection);
+        }
+        start = node;
+    }
+
+    /**
+     * Pick up every road whose weight changed since the last replan and repair the route from
+     * the current intersection. Returns the number of nodes expanded.
+     */
+    public int replan() {
+        long now = Road.currentWeightEpoch();
+        List<Integer> changed = new ArrayList<>();
+        for (int arc = 0; arc < weights.length; arc++) {
+            if (graph.road(arc).getWeightVersion() > epoch) {
+                changed.add(arc);
+            }
+        }
+        epoch = now;
+        return replan(changed);
+    }
+
+    // Replan after a known set of roads changed
+    public int replan(Collection<Road> roads) {
+        List<Integer> changed = new ArrayList<>();
+        for (Road road : roads) {
+            for (int arc : graph.arcsOf(road)) changed.add(arc);
+        }
+        return replan(changed);
+    }
+
+    private int replan(List<Integer> changed) {
+        long begin = System.nanoTime();
+        if (start != lastStart) {
+            keyModifier += heuristicScale * graph.euclideanDistance(lastStart, start);
+            lastStart = start;
+        }
+
+        boolean restart = false;
+        for (int arc : changed) {
+            double oldWeight = weights[arc];
+            double newWeight = metric.cost(graph, arc);
+            if (Double.compare(oldWeight, newWeight) == 0) continue;
+            weights[arc] = newWeight;
+            double straight = graph.euclideanDistance(graph.source(arc), graph.target(arc));
+            if (straight > 0 && newWeight < heuristicScale * straight) {
+                restart = true; // Heuristic no longer admissible
+                break;
+            }
+
+            int tail = graph.source(arc);
+            int head = graph.target(arc);
+            if (tail == goal) continue;
+            if (newWeight < oldWeight) {
+                rhs[tail] = Math.min(rhs[tail], newWeight + g[head]);
+            } else if (rhs[tail] == oldWeight + g[head]) {
+                rhs[tail] = bestSuccessor(tail);
+            }
+            updateVertex(tail);
+        }
+
+        if (restart) {
+            restartCount++;
+            restart();
+        } else {
+            lastExpanded = computeShortestPath();
+        }
+        record(System.nanoTime() - begin);
+        return lastExpanded;
+    }
+
+    private void record(long nanos) {
+        lastReplanNanos = nanos;
+        totalReplanNanos += nanos;
+        replanCount++;
+    }
+
+    // Scaled straight-line distance from the vehicle's position at the last replan to a node
+    private double heuristic(int node) {
+        return heuristicScale * graph.euclideanDistance(lastStart, node);
+    }
+
+    private double bestSuccessor(int node) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int arc = graph.firstArc(node); arc < graph.endArc(node); arc++) {
+            best = Math.min(best, weights[arc] + g[graph.target(arc)]);
+        }
+        return best;
+    }
+
+    private void updateVertex(int node) {
+        if (g[node] != rhs[node]) {
+            double k2 = Math.min(g[node], rhs[node]);
+            open.insertOrUpdate(node, k2 + heuristic(node) + keyModifier, k2);
+        } else {
+            open.remove(node);
+        }
+    }
+
+    private int computeShortestPath() {
+        int expanded = 0;
+        while (!open.isEmpty()) {
+            double startK2 = Math.min(g[start], rhs[start]);
+            double startK1 = startK2 + keyModifier; // heuristic(start) is zero
+            if (!open.topLess(startK1, startK2) && rhs[start] <= g[start]) break;
+
+            int u = open.top();
+            double oldK1 = open.k1(u);
+            double oldK2 = open.k2(u);
+            double k2 = Math.min(g[u], rhs[u]);
+            double k1 = k2 + heuristic(u) + keyModifier;
+            expanded++;
+            if (oldK1 < k1 || (oldK1 == k1 && oldK2 < k2)) {
+                open.insertOrUpdate(u, k1, k2);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                open.remove(u);
+                for (int slot = graph.firstInArc(u); slot < graph.endInArc(u); slot++) {
+                    int arc = graph.inArc(slot);
+                    int pred = graph.source(arc);
+                    if (pred != goal) {
+                        rhs[pred] = Math.min(rhs[pred], weights[arc] + g[u]);
+                        updateVertex(pred);
+                    }
+                }
+            } else {
+                double oldG = g[u];
+                g[u] = Double.POSITIVE_INFINITY;
+                if (u != goal) {
+                    rhs[u] = bestSuccessor(u);
+                }
+                updateVertex(u);
+                for (int slot = graph.firstInArc(u); slot < graph.endInArc(u); slot++) {
+                    int arc = graph.inArc(slot);
+                    int pred = graph.source(arc);
+                    if (pred != goal && rhs[pred] == weights[arc] + oldG) {
+                        rhs[pred] = bestSuccessor(pred);
+                    }
+                    updateVertex(pred);
+                }
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Roads from the current intersection to the destination, following the cheapest successor
+     * at every step. Empty if the destination is unreachable or already reached.
+     */
+    public List<Road> getRoute() {
+        List<Road> route = new ArrayList<>();
+        if (rhs[start] == Double.POSITIVE_INFINITY) {
+            return route;
+        }
+        int node = start;
+        for (int steps = 0; node != goal && steps < graph.nodeCount(); steps++) {
+            int bestArc = -1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int arc = graph.firstArc(node); arc < graph.endArc(node); arc++) {
+                double cost = weights[arc] + g[graph.target(arc)];
+                if (cost < best) {
+                    best = cost;
+                    bestArc = arc;
+                }
+            }
+            if (bestArc < 0) return new ArrayList<>();
+            route.add(graph.road(bestArc));
+            node = graph.target(bestArc);
+        }
+        return route;
+    }
+
+    // Cost from the current intersection to the destination, infinity if unreachable
+    public double getCost() {
+        // The search may stop with the start still overconsistent, so rhs rather than g holds its cost
+        return rhs[start];
+    }
+
+    public boolean hasArrived() {
+        return start == goal;
+    }
+
+    public Intersection getPosition() {
+        return graph.intersection(start);
+    }
+
+    public Intersection getDestination() {
+        return graph.intersection(goal);
+    }
+
+    public CostMetric getMetric() {
+        return metric;
+    }
+
+    // Nodes expanded by the last replan (or the initial plan)
+    public int getLastExpanded() {
+        return lastExpanded;
+    }
+
+    public long getLastReplanNanos() {
+        return lastReplanNanos;
+    }
+
+    public long getTotalReplanNanos() {
+        return totalReplanNanos;
+    }
+
+    // Replans so far, counting the initial plan
+    public int getReplanCount() {
+        return replanCount;
+    }
+
+    // Replans that had to start over because a road became cheaper than the heuristic allows
+    public int getRestartCount() {
+        return restartCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RouteReplanner{replans=%d, restarts=%d, lastExpanded=%d, lastLatency=%.3f ms, avgLatency=%.3f ms}",
+                replanCount, restartCount, lastExpanded, lastReplanNanos / 1e6,
+                replanCount == 0 ? 0.0 : totalReplanNanos / 1e6 / replanCount);
+    }
+
+    /**
+     * Indexed binary heap ordered lexicographically by (k1, k2), as D* Lite requires; the
+     * second key breaks ties towards nodes closer to the goal.
+     */
+    private static final class KeyHeap {
+        private final int[] heap;
+        private final int[] position;
+        private final double[] k1;
+        private final double[] k2;
+        private int size;
+
+        KeyHeap(int capacity) {
+            this.heap = new int[capacity];
+            this.position = new int[capacity];
+            this.k1 = new double[capacity];
+            this.k2 = new double[capacity];
+            Arrays.fill(position, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int top() {
+            return heap[0];
+        }
+
+        double k1(int node) {
+            return k1[node];
+        }
+
+        double k2(int node) {
+            return k2[node];
+        }
+
+        // True if the top key is strictly smaller than (a, b)
+        boolean topLess(double a, double b) {
+            int node = heap[0];
+            return k1[node] < a || (k1[node] == a && k2[node] < b);
+        }
+
+        void insertOrUpdate(int node, double a, double b) {
+            int slot = position[node];
+            k1[node] = a;
+            k2[node] = b;
+            if (slot < 0) {
+                slot = size++;
+                heap[slot] = node;
+                position[node] = slot;
+            }
+            siftUp(slot);
+            siftDown(position[node]);
+        }
+
+        void remove(int node) {
+            int slot = position[node];
+            if (slot < 0) return;
+            position[node] = -1;
+            size--;
+            if (slot == size) return;
+            int last = heap[size];
+            heap[slot] = last;
+            position[last] = slot;
+            siftUp(slot);
+            siftDown(position[last]);
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                position[heap[i]] = -1;
+            }
+            size = 0;
+        }
+
+        private boolean less(int a, int b) {
+            return k1[a] < k1[b] || (k1[a] == k1[b] && k2[a] < k2[b]);
+        }
+
+        private void siftUp(int slot) {
+            int node = heap[slot];
+            while (slot > 0) {
+                int parent = (slot - 1) >>> 1;
+                if (!less(node, heap[parent])) break;
+                heap[slot] = heap[parent];
+                position[heap[slot]] = slot;
+                slot = parent;
+            }
+            heap[slot] = node;
+            position[node] = slot;
+        }
+
+        private void siftDown(int slot) {
+            int node = heap[slot];
+            int half = size >>> 1;
+            while (slot < half) {
+                int child = 2 * slot + 1;
+                if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], node)) break;
+                heap[slot] = heap[child];
+                position[heap[slot]] = slot;
+                slot = child;
+            }
+            heap[slot] = node;
+            position[node] = slot;
+        }
+    }
+}
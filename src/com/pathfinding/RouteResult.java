@@ -0,0 +1,59 @@
+package com.pathfinding;
+
+import com.model.Road;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a point-to-point query: the route, its cost, which algorithm produced it
+ * and how many nodes the search settled to find it.
+ */
+public final class RouteResult {
+    public enum Algorithm {
+        DIJKSTRA,
+        A_STAR,
+        BIDIRECTIONAL_DIJKSTRA,
+        CONTRACTION_HIERARCHIES,
+        CUSTOMIZABLE_ROUTE_PLANNING,
+        TIME_DEPENDENT_A_STAR
+    }
+
+    private final List<Road> roads;
+    private final double cost;
+    private final Algorithm algorithm;
+    private final int settledNodes;
+
+    public RouteResult(List<Road> roads, double cost, Algorithm algorithm, int settledNodes) {
+        this.roads = Collections.unmodifiableList(roads);
+        this.cost = cost;
+        this.algorithm = algorithm;
+        this.settledNodes = settledNodes;
+    }
+
+    public List<Road> getRoads() {
+        return roads;
+    }
+
+    // Total weight of the route, or infinity if no route exists
+    public double getCost() {
+        return cost;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    public boolean isFound() {
+        return cost < Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + " cost=" + cost + " settled=" + settledNodes + " " + roads;
+    }
+}
@@ -0,0 +1,57 @@
+package com.pathfinding;
+
+/**
+ * Reusable per-thread state for a single-source search over a {@link CompactCityGraph}:
+ * tentative distances, predecessor arcs and the priority queue.
+ * Arrays are reset lazily with a generation stamp, so starting a new search is O(1)
+ * instead of O(n).
+ */
+final class SearchWorkspace {
+    private final double[] distance;
+    private final int[] predecessorArc;
+    private final int[] stamp;
+    private int generation;
+    final IndexedMinHeap heap;
+    int settled; // Nodes settled by the last search
+
+    SearchWorkspace(int nodeCount) {
+        this.distance = new double[nodeCount];
+        this.predecessorArc = new int[nodeCount];
+        this.stamp = new int[nodeCount];
+        this.heap = new IndexedMinHeap(nodeCount);
+    }
+
+    int capacity() {
+        return stamp.length;
+    }
+
+    // Forget the previous search
+    void reset() {
+        heap.clear();
+        settled = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    boolean reached(int node) {
+        return stamp[node] == generation;
+    }
+
+    double distance(int node) {
+        return stamp[node] == generation ? distance[node] : Double.POSITIVE_INFINITY;
+    }
+
+    // Predecessor arc of a reached node, or -1 for the search root
+    int predecessorArc(int node) {
+        return stamp[node] == generation ? predecessorArc[node] : -1;
+    }
+
+    void label(int node, double dist, int arc) {
+        stamp[node] = generation;
+        distance[node] = dist;
+        predecessorArc[node] = arc;
+    }
+}
@@ -0,0 +1,49 @@
+package com.pathfinding;
+
+import com.model.TrafficLight;
+
+/**
+ * Time-dependent A* over a {@link CostMetric#DRIVING_TIME} snapshot. A label is the time
+ * elapsed since departure. Crossing an arc costs its driving time plus the red-phase wait of
+ * the light at its head at the moment of arrival. There is no wait at the destination itself.
+ * <p>
+ * A vehicle arriving on red leaves when the light turns green, so arriving later never means
+ * leaving earlier. With this FIFO property the earliest arrival at a node is also the best
+ * label to extend, and the search stays label-setting like plain Dijkstra. Waits are never
+ * negative, so the straight-line bound on driving time stays a consistent heuristic.
+ */
+final class TimeDependentSearch {
+    private TimeDependentSearch() {
+    }
+
+    // Labels in the workspace are seconds after departure; departure is absolute simulation time
+    static void search(CompactCityGraph graph, int source, int target, double departure, SearchWorkspace workspace) {
+        IndexedMinHeap heap = workspace.heap;
+        double scale = graph.minCostPerDistance();
+        RoadGraph roads = graph.roadGraph();
+        workspace.label(source, 0.0, -1);
+        heap.insertOrDecrease(source, scale * graph.euclideanDistance(source, target));
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            workspace.settled++;
+            if (current == target) break;
+
+            double currentTime = workspace.distance(current);
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int neighbor = graph.target(arc);
+                double arrival = currentTime + graph.weight(arc);
+                if (arrival == Double.POSITIVE_INFINITY) continue;
+
+                TrafficLight light = roads.intersection(neighbor).getTrafficLight();
+                if (light != null && neighbor != target) {
+                    arrival += light.waitTimeAt(departure + arrival);
+                }
+                if (arrival < workspace.distance(neighbor)) {
+                    workspace.label(neighbor, arrival, arc);
+                    heap.insertOrDecrease(neighbor, arrival + scale * graph.euclideanDistance(neighbor, target));
+                }
+            }
+        }
+    }
+}
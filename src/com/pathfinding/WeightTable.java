@@ -0,0 +1,96 @@
+package com.pathfinding;
+
+import com.model.OneWayRoad;
+import com.model.Road;
+
+import java.util.Arrays;
+
+/**
+ * The {@link Road#calculateWeight()} of every arc of a {@link RoadGraph}, evaluated in one batch
+ * pass into a flat double[] indexed by arc. The formula's inputs are kept in primitive arrays
+ * (length, vehicle count, light penalty), and a pass only re-reads the roads whose weight version
+ * moved since the previous one. The weights themselves then come from a single branch-free loop
+ * over those arrays, which the JIT compiles to SIMD instructions.
+ * <p>
+ * A pass that sees any change fills a new array, so an array handed out earlier, for instance
+ * to a {@link CompactCityGraph} snapshot, never changes underneath its reader. Roads of classes
+ * other than Road and OneWayRoad may override the formula and are evaluated one call at a time.
+ */
+public final class WeightTable {
+    private static final double LIGHT_PENALTY = 1.5; // Matches Road.calculateWeight
+
+    private final RoadGraph graph;
+    private final double[] lengths;      // lengths[a] = road length, or infinity while blocked
+    private final int[] vehicleCounts;   // vehicleCounts[a] = vehicles on the road of arc a, in its direction
+    private final double[] lightFactors; // lightFactors[a] = LIGHT_PENALTY if either end has a light, else 1
+    private final int[] customArcs;      // Arcs whose road class has its own weight formula
+    private double[] weights;
+    private long seenEpoch = -1;         // Road weight epoch the current weights reflect
+
+    WeightTable(RoadGraph graph) {
+        int arcs = graph.arcCount();
+        this.graph = graph;
+        this.lengths = new double[arcs];
+        this.vehicleCounts = new int[arcs];
+        this.lightFactors = new double[arcs];
+
+        int custom = 0;
+        int[] found = new int[arcs];
+        for (int arc = 0; arc < arcs; arc++) {
+            Class<?> type = graph.road(arc).getClass();
+            if (type != Road.class && type != OneWayRoad.class) {
+                found[custom++] = arc;
+            }
+        }
+        this.customArcs = Arrays.copyOf(found, custom);
+    }
+
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Current weight of every arc. Returns the array of the previous pass if no road weight
+     * changed since; the returned array must not be modified.
+     */
+    public synchronized double[] update() {
+        long epoch = Road.currentWeightEpoch();
+        if (weights != null && epoch == seenEpoch) {
+            return weights;
+        }
+        // Changes racing with this pass carry a later version and are picked up by the next one
+        gather(seenEpoch);
+        double[] next = new double[lengths.length];
+        computeWeights(lengths, vehicleCounts, lightFactors, next);
+        for (int arc : customArcs) {
+            next[arc] = graph.weight(arc);
+        }
+        weights = next;
+        seenEpoch = epoch;
+        return next;
+    }
+
+    // Copy the formula inputs of every road changed after `since` into the primitive arrays
+    private void gather(long since) {
+        for (int arc = 0; arc < lengths.length; arc++) {
+            Road road = graph.road(arc);
+            if (road.getWeightVersion() > since) {
+                lengths[arc] = road.isBlocked() ? Double.POSITIVE_INFINITY : road.getLength();
+                vehicleCounts[arc] = road.getVehicleCount(graph.isReverse(arc));
+                lightFactors[arc] = road.getSource().hasTrafficLight() || road.getDestination().hasTrafficLight()
+                        ? LIGHT_PENALTY : 1.0;
+            }
+        }
+    }
+
+    /*
+     * length * (1 + vehicles / 10) * lightFactor, in the same operation order as
+     * Road.calculateWeight so the results are bit-identical. Blocked roads come out infinite
+     * because their length is. No branches and no objects, so the loop vectorises.
+     */
+    static void computeWeights(double[] lengths, int[] vehicleCounts, double[] lightFactors, double[] weights) {
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = lengths[i] * (1 + vehicleCounts[i] / 10.0) * lightFactors[i];
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package com.simulation;
+
+import com.model.Intersection;
+import com.model.Road;
+import com.pathfinding.CompactCityGraph;
+import com.pathfinding.CostMetric;
+import com.pathfinding.PathFinder;
+import com.pathfinding.RoadGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Agent-based traffic: vehicles are generated from a {@link DemandMatrix}, routed with
+ * {@link PathFinder} and moved road by road in fixed time steps. Vehicles enter and leave roads
+ * through {@link Road#addVehicles(int, boolean)} and {@link Road#removeVehicles(int, boolean)},
+ * in the direction they drive them, so congestion follows the demand. Every vehicle is routed on
+ * a travel-time snapshot that is refreshed at a fixed interval, and sees the congestion other
+ * vehicles create.
+ * <p>
+ * Agents are stored struct-of-arrays in primitive arrays, with the active ones packed at the
+ * front: about 24 bytes per agent. Vehicles with the same origin and destination in one
+ * routing interval share a single route array, so a million agents fit in a few tens of MB
+ * plus their routes.
+ * <p>
+ * A step can run in parallel. Roads are split into ranges by the index of their first arc, and
+ * each partition owns the agents on its roads, in both directions. Partitions move their agents
+ * concurrently on a ForkJoinPool. An agent crossing into another partition's road is handed over
+ * through a per-target outbox, and the target takes it in after a barrier. So no road and no
+ * buffer is ever written by two threads at once. Outboxes are drained in partition order, which
+ * makes a seeded run identical on any number of threads.
+ */
+public class AgentSimulation {
+    public static final double DEFAULT_STEP_SECONDS = 1.0;
+    public static final double DEFAULT_REROUTE_INTERVAL = 300.0; // Seconds between routing snapshots
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_ROUTE = -1;     // Route for this cell not computed in the current interval
+    private static final int UNREACHABLE = -2;  // Destination cannot be reached from the origin
+    private static final int PARALLEL_THRESHOLD = 4096; // Fewer active agents are stepped on the calling thread
+
+    private final RoadGraph graph;
+    private final DemandMatrix demand;
+    private final Random random;
+    private final double stepSeconds;
+    private final ForkJoinPool pool;
+    private final Partition[] partitions;
+    private final int[] partitionByArc; // Both arcs of a two-way road belong to the partition of its first arc
+    private final int[] pendingByArc;   // Vehicles entering minus leaving each arc this step, written by its partition only
+    private double rerouteInterval = DEFAULT_REROUTE_INTERVAL;
+
+    // Routes shared by all agents of one demand cell within a routing interval
+    private final List<int[]> routes = new ArrayList<>();
+    private final int[] routeByCell;
+    private CompactCityGraph routingGraph;
+    private double lastReroute;
+
+    private double time;
+    private double pendingTrips; // Fractional demand carried over to the next step
+    private long tripsStarted;
+    private long tripsUnroutable;
+    private long stepNanos;
+
+    public AgentSimulation(RoadGraph graph, DemandMatrix demand, long seed) {
+        this(graph, demand, new Random(seed), DEFAULT_STEP_SECONDS);
+    }
+
+    public AgentSimulation(RoadGraph graph, DemandMatrix demand, Random random, double stepSeconds) {
+        this(graph, demand, random, stepSeconds, 1, ForkJoinPool.commonPool());
+    }
+
+    public AgentSimulation(RoadGraph graph, DemandMatrix demand, Random random, double stepSeconds,
+                           int partitionCount, ForkJoinPool pool) {
+        this.graph = graph;
+        this.demand = demand;
+        this.random = random;
+        this.stepSeconds = stepSeconds;
+        this.pool = pool;
+        this.routeByCell = new int[demand.getOrigins().size() * demand.getDestinations().size()];
+        int arcsPerPartition = Math.max(1, (graph.arcCount() + partitionCount - 1) / partitionCount);
+        this.partitionByArc = new int[graph.arcCount()];
+        for (int arc = 0; arc < partitionByArc.length; arc++) {
+            partitionByArc[arc] = graph.arcsOf(graph.road(arc))[0] / arcsPerPartition;
+        }
+        this.pendingByArc = new int[graph.arcCount()];
+        this.partitions = new Partition[partitionCount];
+        for (int p = 0; p < partitionCount; p++) {
+            partitions[p] = new Partition(p);
+        }
+    }
+
+    public void setRerouteInterval(double rerouteInterval) {
+        this.rerouteInterval = rerouteInterval;
+    }
+
+    // Run a step every stepSeconds on the engine's clock
+    public void scheduleOn(SimulationEngine engine) {
+        time = engine.getTime();
+        engine.scheduleAfter(stepSeconds, new SimulationEngine.Event() {
+            @Override
+            public void fire(SimulationEngine engine) {
+                time = engine.getTime();
+                step();
+                engine.scheduleAfter(stepSeconds, this);
+            }
+        });
+    }
+
+    // Advance the simulation by `duration` seconds of simulated time
+    public void run(double duration) {
+        double end = time + duration;
+        while (time + stepSeconds <= end + 1e-9) {
+            step();
+        }
+    }
+
+    /**
+     * One time step: generate this step's share of the demand, then move every agent whose
+     * current road is finished onto the next road of its route, and finally hand agents that
+     * crossed partitions to their new owners. Vehicle counts change once per road at the end of
+     * the step, so every agent entering a road sees its congestion as the step began.
+     */
+    public void step() {
+        long begin = System.nanoTime();
+        if (routingGraph == null || time - lastReroute >= rerouteInterval) {
+            refreshRoutes();
+        }
+        spawnTrips();
+        forEachPartition(Partition::move);
+        forEachPartition(Partition::receive);
+        time += stepSeconds;
+        stepNanos += System.nanoTime() - begin;
+    }
+
+    // Run the action for every partition, in parallel when there is enough work to split
+    private void forEachPartition(Consumer<Partition> action) {
+        if (partitions.length == 1 || getActiveAgents() < PARALLEL_THRESHOLD) {
+            for (Partition partition : partitions) {
+                action.accept(partition);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            tasks.add(ForkJoinTask.adapt(() -> action.accept(partition)));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    private int partitionOf(int arc) {
+        return partitionByArc[arc];
+    }
+
+    private void spawnTrips() {
+        if (demand.getTotalTripsPerHour() <= 0) return;
+        pendingTrips += demand.getTotalTripsPerHour() * stepSeconds / 3600.0;
+        int trips = (int) pendingTrips;
+        pendingTrips -= trips;
+        for (int t = 0; t < trips; t++) {
+            int cell = demand.sample(random);
+            int routeId = routeFor(cell);
+            if (routeId < 0 || graph.road(routes.get(routeId)[0]).isBlocked()) {
+                tripsUnroutable++;
+                continue;
+            }
+            int firstArc = routes.get(routeId)[0];
+            partitions[partitionOf(firstArc)].enter(routeId, 0, time);
+            tripsStarted++;
+        }
+    }
+
+    // Route of a demand cell under the current routing snapshot, computed on first use
+    private int routeFor(int cell) {
+        int routeId = routeByCell[cell];
+        if (routeId != NO_ROUTE) {
+            return routeId;
+        }
+        Intersection origin = demand.origin(cell);
+        List<Road> roads = PathFinder.findShortestRoute(origin, demand.destination(cell), routingGraph);
+        if (roads.isEmpty()) {
+            routeByCell[cell] = UNREACHABLE;
+            return UNREACHABLE;
+        }
+        // Translate roads to arcs, following the direction the route travels them
+        int[] arcs = new int[roads.size()];
+        int node = graph.indexOf(origin);
+        for (int r = 0; r < arcs.length; r++) {
+            for (int arc : graph.arcsOf(roads.get(r))) {
+                if (graph.source(arc) == node) {
+                    arcs[r] = arc;
+                    break;
+                }
+            }
+            node = graph.target(arcs[r]);
+        }
+        routes.add(arcs);
+        routeByCell[cell] = routes.size() - 1;
+        return routes.size() - 1;
+    }
+
+    /**
+     * Take a new travel-time snapshot and forget the cached routes. Routes still driven by active
+     * agents are kept and renumbered, so the route pool never outgrows what is in use.
+     */
+    private void refreshRoutes() {
+        routingGraph = CompactCityGraph.snapshot(graph, CostMetric.TRAVEL_TIME);
+        lastReroute = time;
+        Arrays.fill(routeByCell, NO_ROUTE);
+
+        int[] remap = new int[routes.size()];
+        Arrays.fill(remap, -1);
+        List<int[]> kept = new ArrayList<>();
+        for (Partition partition : partitions) {
+            int[] routeIds = partition.routeIds;
+            for (int i = 0; i < partition.activeCount; i++) {
+                int old = routeIds[i];
+                if (remap[old] < 0) {
+                    remap[old] = kept.size();
+                    kept.add(routes.get(old));
+                }
+                routeIds[i] = remap[old];
+            }
+        }
+        routes.clear();
+        routes.addAll(kept);
+    }
+
+    /**
+     * The agents on one range of roads, struct-of-arrays with active agents packed into
+     * [0, activeCount). Only the partition's own task writes its arrays and the roads of its
+     * arcs. Partitions are assigned by road, not by arc, so the two arcs of a two-way road share
+     * a partition: each road, its vehicle counts and its weight version, has a single writer.
+     * Moves only add up in pendingByArc during the step; apply() hands each touched road its net
+     * change in one call, so the shared weight epoch is bumped once per road direction, not once
+     * per vehicle.
+     */
+    private final class Partition {
+        private final int index;
+        private int[] routeIds = new int[INITIAL_CAPACITY];    // Index into routes
+        private int[] routeSteps = new int[INITIAL_CAPACITY];  // Position of the agent's current arc within its route
+        private double[] leaveTimes = new double[INITIAL_CAPACITY]; // When the agent reaches the end of its current road
+        private double[] departureTimes = new double[INITIAL_CAPACITY];
+        private int activeCount;
+        private final Handoffs[] outboxes; // outboxes[p] = agents moving onto partition p's roads this step
+        private int[] touchedArcs = new int[INITIAL_CAPACITY]; // Arcs with a pending count change, maybe repeated
+        private int touchedCount;
+
+        private long tripsCompleted;
+        private double totalTripSeconds;
+        private long agentSteps;
+
+        Partition(int index) {
+            this.index = index;
+            this.outboxes = new Handoffs[partitions.length];
+        }
+
+        // Put an agent on the given step of its route, entering that road now
+        void enter(int routeId, int routeStep, double departureTime) {
+            int arc = routes.get(routeId)[routeStep];
+            Road road = graph.road(arc);
+            boolean reverse = graph.isReverse(arc);
+            int agent = addAgent();
+            routeIds[agent] = routeId;
+            routeSteps[agent] = routeStep;
+            departureTimes[agent] = departureTime;
+            leaveTimes[agent] = time + TrafficSimulation.traversalTime(road, reverse, time);
+            count(arc, 1);
+        }
+
+        void move() {
+            int i = 0;
+            while (i < activeCount) {
+                agentSteps++;
+                if (leaveTimes[i] > time) {
+                    i++;
+                    continue;
+                }
+                int[] route = routes.get(routeIds[i]);
+                int next = routeSteps[i] + 1;
+                if (next == route.length) {
+                    count(route[next - 1], -1);
+                    tripsCompleted++;
+                    totalTripSeconds += time - departureTimes[i];
+                    removeAgent(i); // The last agent moves into slot i and is handled next
+                    continue;
+                }
+                Road nextRoad = graph.road(route[next]);
+                if (nextRoad.isBlocked()) {
+                    leaveTimes[i] = time + stepSeconds; // Wait at the end of the current road
+                    i++;
+                    continue;
+                }
+                count(route[next - 1], -1);
+                int target = partitionOf(route[next]);
+                if (target != index) {
+                    if (outboxes[target] == null) {
+                        outboxes[target] = new Handoffs();
+                    }
+                    outboxes[target].add(routeIds[i], next, departureTimes[i]);
+                    removeAgent(i);
+                    continue;
+                }
+                boolean nextReverse = graph.isReverse(route[next]);
+                count(route[next], 1);
+                routeSteps[i] = next;
+                leaveTimes[i] = time + TrafficSimulation.traversalTime(nextRoad, nextReverse, time);
+                i++;
+            }
+        }
+
+        // Take in the agents other partitions handed over, in partition order
+        void receive() {
+            for (Partition source : partitions) {
+                Handoffs inbox = source.outboxes[index];
+                if (inbox == null) continue;
+                for (int k = 0; k < inbox.size; k++) {
+                    enter(inbox.routeIds[k], inbox.routeSteps[k], inbox.departureTimes[k]);
+                }
+                inbox.clear();
+            }
+            apply();
+        }
+
+        // Note a vehicle entering (+1) or leaving (-1) one of this partition's arcs
+        private void count(int arc, int change) {
+            if (pendingByArc[arc] == 0) {
+                if (touchedCount == touchedArcs.length) {
+                    touchedArcs = Arrays.copyOf(touchedArcs, touchedCount * 2);
+                }
+                touchedArcs[touchedCount++] = arc;
+            }
+            pendingByArc[arc] += change;
+        }
+
+        // Give every touched road its net change for the step
+        private void apply() {
+            for (int k = 0; k < touchedCount; k++) {
+                int arc = touchedArcs[k];
+                int change = pendingByArc[arc];
+                if (change > 0) {
+                    graph.road(arc).addVehicles(change, graph.isReverse(arc));
+                } else if (change < 0) {
+                    graph.road(arc).removeVehicles(-change, graph.isReverse(arc));
+                }
+                pendingByArc[arc] = 0;
+            }
+            touchedCount = 0;
+        }
+
+        private int addAgent() {
+            if (activeCount == routeIds.length) {
+                int capacity = routeIds.length * 2;
+                routeIds = Arrays.copyOf(routeIds, capacity);
+                routeSteps = Arrays.copyOf(routeSteps, capacity);
+                leaveTimes = Arrays.copyOf(leaveTimes, capacity);
+                departureTimes = Arrays.copyOf(departureTimes, capacity);
+            }
+            return activeCount++;
+        }
+
+        private void removeAgent(int slot) {
+            int last = --activeCount;
+            routeIds[slot] = routeIds[last];
+            routeSteps[slot] = routeSteps[last];
+            leaveTimes[slot] = leaveTimes[last];
+            departureTimes[slot] = departureTimes[last];
+        }
+    }
+
+    // Agents leaving one partition for another during a step, written by the source and read by the target
+    private static final class Handoffs {
+        private int[] routeIds = new int[16];
+        private int[] routeSteps = new int[16];
+        private double[] departureTimes = new double[16];
+        private int size;
+
+        void add(int routeId, int routeStep, double departureTime) {
+            if (size == routeIds.length) {
+                routeIds = Arrays.copyOf(routeIds, size * 2);
+                routeSteps = Arrays.copyOf(routeSteps, size * 2);
+                departureTimes = Arrays.copyOf(departureTimes, size * 2);
+            }
+            routeIds[size] = routeId;
+            routeSteps[size] = routeStep;
+            departureTimes[size] = departureTime;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public int getActiveAgents() {
+        int active = 0;
+        for (Partition partition : partitions) {
+            active += partition.activeCount;
+        }
+        return active;
+    }
+
+    public long getTripsStarted() {
+        return tripsStarted;
+    }
+
+    public long getTripsCompleted() {
+        long completed = 0;
+        for (Partition partition : partitions) {
+            completed += partition.tripsCompleted;
+        }
+        return completed;
+    }
+
+    // Trips dropped because no route existed when they were generated
+    public long getTripsUnroutable() {
+        return tripsUnroutable;
+    }
+
+    public double getAverageTripSeconds() {
+        double total = 0.0;
+        for (Partition partition : partitions) {
+            total += partition.totalTripSeconds;
+        }
+        long completed = getTripsCompleted();
+        return completed == 0 ? 0.0 : total / completed;
+    }
+
+    // Agent updates performed so far; an agent counts once per step it is active
+    public long getAgentSteps() {
+        long steps = 0;
+        for (Partition partition : partitions) {
+            steps += partition.agentSteps;
+        }
+        return steps;
+    }
+
+    // Agent updates per second of wall-clock time spent stepping
+    public double getAgentStepsPerSecond() {
+        return stepNanos == 0 ? 0.0 : getAgentSteps() / (stepNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AgentSimulation{time=%.0fs, active=%d, started=%d, completed=%d, unroutable=%d, "
+                        + "avgTrip=%.1fs, agentSteps/s=%.0f}",
+                time, getActiveAgents(), tripsStarted, getTripsCompleted(), tripsUnroutable,
+                getAverageTripSeconds(), getAgentStepsPerSecond());
+    }
+}
@@ -0,0 +1,102 @@
+package com.simulation;
+
+import com.model.Intersection;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Origin/destination travel demand: how many trips per hour start at each origin and head for
+ * each destination. Trips are drawn in proportion to the matrix with one binary search over
+ * cumulative rates.
+ */
+public final class DemandMatrix {
+    private final List<Intersection> origins;
+    private final List<Intersection> destinations;
+    private final double[][] tripsPerHour;
+    private final double[] cumulative; // Row-major running total of tripsPerHour
+    private final double total;
+
+    public DemandMatrix(List<Intersection> origins, List<Intersection> destinations, double[][] tripsPerHour) {
+        if (tripsPerHour.length != origins.size()) {
+            throw new IllegalArgumentException("Demand matrix has " + tripsPerHour.length + " rows for "
+                    + origins.size() + " origins");
+        }
+        this.origins = Collections.unmodifiableList(origins);
+        this.destinations = Collections.unmodifiableList(destinations);
+        this.tripsPerHour = new double[origins.size()][];
+        this.cumulative = new double[origins.size() * destinations.size()];
+        double running = 0.0;
+        for (int o = 0; o < origins.size(); o++) {
+            if (tripsPerHour[o].length != destinations.size()) {
+                throw new IllegalArgumentException("Demand matrix row " + o + " has " + tripsPerHour[o].length
+                        + " columns for " + destinations.size() + " destinations");
+            }
+            this.tripsPerHour[o] = Arrays.copyOf(tripsPerHour[o], destinations.size());
+            for (int d = 0; d < destinations.size(); d++) {
+                double rate = tripsPerHour[o][d];
+                if (rate < 0 || Double.isNaN(rate)) {
+                    throw new IllegalArgumentException("Negative demand from " + origins.get(o).getId()
+                            + " to " + destinations.get(d).getId());
+                }
+                running += rate;
+                cumulative[o * destinations.size() + d] = running;
+            }
+        }
+        this.total = running;
+    }
+
+    // Same demand between every ordered pair of distinct zones
+    public static DemandMatrix uniform(List<Intersection> zones, double tripsPerHourPerPair) {
+        double[][] trips = new double[zones.size()][zones.size()];
+        for (int o = 0; o < zones.size(); o++) {
+            for (int d = 0; d < zones.size(); d++) {
+                trips[o][d] = o == d ? 0.0 : tripsPerHourPerPair;
+            }
+        }
+        return new DemandMatrix(zones, zones, trips);
+    }
+
+    public double getTotalTripsPerHour() {
+        return total;
+    }
+
+    public double getTripsPerHour(int origin, int destination) {
+        return tripsPerHour[origin][destination];
+    }
+
+    public List<Intersection> getOrigins() {
+        return origins;
+    }
+
+    public List<Intersection> getDestinations() {
+        return destinations;
+    }
+
+    // Draw an (origin, destination) cell in proportion to its demand, as origin * destinations + destination
+    public int sample(Random random) {
+        double point = random.nextDouble() * total;
+        // First cell whose running total exceeds the point; zero-demand cells can never be it
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > point) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public Intersection origin(int cell) {
+        return origins.get(cell / destinations.size());
+    }
+
+    public Intersection destination(int cell) {
+        return destinations.get(cell % destinations.size());
+    }
+}
@@ -0,0 +1,97 @@
+package com.simulation;
+
+/**
+ * A splittable SplitMix64 generator, with the same algorithm and output as
+ * java.util.SplittableRandom. Unlike SplittableRandom, its whole state (seed and gamma) can be
+ * read back and restored, so a simulation snapshot can resume every stream exactly where it
+ * stopped. Not thread-safe: give each thread or partition its own stream via {@link #split()}.
+ */
+public final class RandomStream {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private final long gamma; // Odd increment; distinct gammas give independent streams
+
+    public RandomStream(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private RandomStream(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    // Continue a stream from a state read back with getSeed() and getGamma()
+    public static RandomStream restore(long seed, long gamma) {
+        if ((gamma & 1L) == 0) {
+            throw new IllegalArgumentException("Stream gamma must be odd: " + gamma);
+        }
+        return new RandomStream(seed, gamma);
+    }
+
+    // A new stream, statistically independent of this one, which advances this one by two draws
+    public RandomStream split() {
+        return new RandomStream(nextLong(), mixGamma(nextSeed()));
+    }
+
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    // Uniform in [0, bound)
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive: " + bound);
+        }
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return r & m;
+        }
+        // Reject the top sliver of values that would bias the modulo
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+        }
+        return r;
+    }
+
+    public boolean nextBoolean() {
+        return mix32(nextSeed()) < 0;
+    }
+
+    // Uniform in [0, 1)
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getGamma() {
+        return gamma;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    // Odd gamma with enough bit transitions to avoid weak streams
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int transitions = Long.bitCount(z ^ (z >>> 1));
+        return transitions < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
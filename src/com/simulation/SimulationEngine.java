@@ -0,0 +1,132 @@
+package com.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Headless discrete-event engine. Events wait in a priority-queue calendar ordered by simulated
+ * time and fire in that order. The clock jumps from one event to the next, so simulated time is
+ * independent of wall time: a batch run goes as fast as the events can be processed, and a UI
+ * can instead pace it against a real clock with {@link #runUntil(double)}. Events due at the
+ * same time fire in the order they were scheduled, which keeps runs reproducible.
+ * <p>
+ * The engine is not thread-safe; events are expected to be scheduled from the thread running it,
+ * usually from inside other events.
+ */
+public class SimulationEngine {
+    // Something that happens at a point in simulated time
+    public interface Event {
+        void fire(SimulationEngine engine);
+    }
+
+    static final class ScheduledEvent implements Comparable<ScheduledEvent> {
+        final double time;
+        final long sequence; // Tie-break: scheduling order
+        final Event event;
+
+        ScheduledEvent(double time, long sequence, Event event) {
+            this.time = time;
+            this.sequence = sequence;
+            this.event = event;
+        }
+
+        @Override
+        public int compareTo(ScheduledEvent other) {
+            int byTime = Double.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<ScheduledEvent> calendar = new PriorityQueue<>();
+    private double now;
+    private long nextSequence;
+    private long processedEvents;
+
+    public SimulationEngine() {
+        this(0.0);
+    }
+
+    public SimulationEngine(double startTime) {
+        this.now = startTime;
+    }
+
+    // Schedule an event at an absolute simulated time, which may not lie in the past
+    public void schedule(double time, Event event) {
+        if (time < now || Double.isNaN(time)) {
+            throw new IllegalArgumentException("Cannot schedule an event at " + time + ", simulation time is " + now);
+        }
+        calendar.add(new ScheduledEvent(time, nextSequence++, event));
+    }
+
+    public void scheduleAfter(double delay, Event event) {
+        schedule(now + delay, event);
+    }
+
+    // Fire the next event; false if the calendar is empty
+    public boolean step() {
+        ScheduledEvent next = calendar.poll();
+        if (next == null) {
+            return false;
+        }
+        now = next.time;
+        processedEvents++;
+        next.event.fire(this);
+        return true;
+    }
+
+    /**
+     * Fire every event due at or before `time`, then move the clock to `time`.
+     * Returns the number of events fired.
+     */
+    public long runUntil(double time) {
+        long before = processedEvents;
+        while (!calendar.isEmpty() && calendar.peek().time <= time) {
+            step();
+        }
+        if (time > now) {
+            now = time;
+        }
+        return processedEvents - before;
+    }
+
+    // Current simulated time
+    public double getTime() {
+        return now;
+    }
+
+    // Time of the next event, or infinity if nothing is scheduled
+    public double getNextEventTime() {
+        ScheduledEvent next = calendar.peek();
+        return next == null ? Double.POSITIVE_INFINITY : next.time;
+    }
+
+    public int getPendingEvents() {
+        return calendar.size();
+    }
+
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    // Drop every pending event; the clock stays where it is
+    public void clear() {
+        calendar.clear();
+    }
+
+    // Pending events in the order they will fire
+    List<ScheduledEvent> pendingInOrder() {
+        List<ScheduledEvent> pending = new ArrayList<>(calendar);
+        Collections.sort(pending);
+        return pending;
+    }
+
+    // Drop every pending event and move the clock, backwards if need be, e.g. to restore a snapshot
+    void restart(double time, long processedEvents) {
+        calendar.clear();
+        this.now = time;
+        this.processedEvents = processedEvents;
+        this.nextSequence = 0;
+    }
+}
@@ -0,0 +1,334 @@
+package com.simulation;
+
+import com.model.CityMap;
+import com.model.Intersection;
+import com.model.Road;
+import com.model.TrafficLight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compact binary snapshot of a {@link TrafficSimulation}: the clock and counters, every road's
+ * vehicle count and blocked flag, every traffic light's phase, the random streams of the
+ * background traffic, and all pending events. Restoring a snapshot into a simulation over the
+ * same map continues the run exactly where it was saved. A long run can thus be resumed, or
+ * several what-if scenarios forked from one mid-day state.
+ * <p>
+ * Roads are identified by their index in {@link CityMap#getRoads()} and lights by the id of
+ * their intersection. The layout, big-endian as written by DataOutputStream, is: header, vehicle
+ * counts source -> destination, vehicle counts destination -> source, blocked flags packed eight
+ * to a byte, lights, random streams, then pending events in firing order. Only events scheduled
+ * by TrafficSimulation itself can be saved.
+ */
+public final class SimulationSnapshot {
+    private static final int MAGIC = 0x53524E50; // "SRNP"
+    private static final int VERSION = 2; // 2: per-direction vehicle counts
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Pending event kinds
+    private static final byte PHASE_CHANGE = 0;
+    private static final byte BACKGROUND_TRAFFIC = 1;
+    private static final byte VEHICLE_ENTRY = 2;
+    private static final byte VEHICLE_EXIT = 3;
+    private static final byte VEHICLE_ENTRY_REVERSE = 4;
+    private static final byte VEHICLE_EXIT_REVERSE = 5;
+
+    private SimulationSnapshot() {
+    }
+
+    public static void save(TrafficSimulation simulation, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(simulation, out);
+        }
+    }
+
+    public static void restore(TrafficSimulation simulation, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            read(simulation, in);
+        }
+    }
+
+    // Write the snapshot; the stream is flushed but left open
+    public static void write(TrafficSimulation simulation, OutputStream target) throws IOException {
+        SimulationEngine engine = simulation.getEngine();
+        CityMap cityMap = simulation.getCityMap();
+        List<Road> roads = cityMap.getRoads();
+        List<SimulationEngine.ScheduledEvent> pending = engine.pendingInOrder();
+
+        // Check every pending event before writing anything, so a failure leaves no half a file
+        List<WeightSimulator> models = new ArrayList<>();
+        boolean vehicleEvents = false;
+        for (SimulationEngine.ScheduledEvent scheduled : pending) {
+            SimulationEngine.Event event = scheduled.event;
+            if (event instanceof TrafficSimulation.BackgroundTraffic) {
+                WeightSimulator model = ((TrafficSimulation.BackgroundTraffic) event).weightSimulator;
+                if (indexOf(models, model) < 0) {
+                    models.add(model);
+                }
+            } else if (event instanceof TrafficSimulation.VehicleEntry || event instanceof TrafficSimulation.VehicleExit) {
+                vehicleEvents = true;
+            } else if (!(event instanceof TrafficSimulation.PhaseChange)) {
+                throw new IllegalStateException("Cannot snapshot a pending " + event.getClass().getName()
+                        + "; only events scheduled by TrafficSimulation can be saved");
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint(roads));
+        out.writeDouble(engine.getTime());
+        out.writeLong(engine.getProcessedEvents());
+        out.writeLong(simulation.getLightChanges());
+        out.writeLong(simulation.getVehiclesEntered());
+        out.writeLong(simulation.getVehiclesLeft());
+        out.writeLong(simulation.getVehiclesRejected());
+
+        out.writeInt(roads.size());
+        for (Road road : roads) {
+            out.writeInt(road.getVehicleCount(false));
+        }
+        for (Road road : roads) {
+            out.writeInt(road.getVehicleCount(true));
+        }
+        for (int i = 0; i < roads.size(); i += 8) {
+            int bits = 0;
+            for (int j = 0; j < 8 && i + j < roads.size(); j++) {
+                if (roads.get(i + j).isBlocked()) {
+                    bits |= 1 << j;
+                }
+            }
+            out.writeByte(bits);
+        }
+
+        List<Intersection> lit = new ArrayList<>();
+        Map<Intersection, Integer> lightIndex = new IdentityHashMap<>();
+        for (Intersection intersection : cityMap.getIntersections()) {
+            if (intersection.getTrafficLight() != null) {
+                lightIndex.put(intersection, lit.size());
+                lit.add(intersection);
+            }
+        }
+        out.writeInt(lit.size());
+        for (Intersection intersection : lit) {
+            TrafficLight light = intersection.getTrafficLight();
+            out.writeUTF(intersection.getId());
+            out.writeInt(light.getGreenDuration());
+            out.writeInt(light.getYellowDuration());
+            out.writeInt(light.getRedDuration());
+            out.writeInt(light.getOffset());
+            out.writeInt(light.getShift());
+            out.writeInt(light.getCurrentTime());
+        }
+
+        out.writeInt(models.size());
+        for (WeightSimulator model : models) {
+            RandomStream[] streams = model.getStreams();
+            out.writeInt(streams.length);
+            for (RandomStream stream : streams) {
+                out.writeLong(stream.getSeed());
+                out.writeLong(stream.getGamma());
+            }
+        }
+
+        Map<Road, Integer> roadIndex = vehicleEvents ? indexRoads(roads) : null;
+        out.writeInt(pending.size());
+        for (SimulationEngine.ScheduledEvent scheduled : pending) {
+            SimulationEngine.Event event = scheduled.event;
+            out.writeDouble(scheduled.time);
+            if (event instanceof TrafficSimulation.PhaseChange) {
+                out.writeByte(PHASE_CHANGE);
+                out.writeInt(lightIndex.get(((TrafficSimulation.PhaseChange) event).intersection));
+            } else if (event instanceof TrafficSimulation.BackgroundTraffic) {
+                TrafficSimulation.BackgroundTraffic traffic = (TrafficSimulation.BackgroundTraffic) event;
+                out.writeByte(BACKGROUND_TRAFFIC);
+                out.writeInt(indexOf(models, traffic.weightSimulator));
+                out.writeDouble(traffic.interval);
+            } else if (event instanceof TrafficSimulation.VehicleEntry) {
+                TrafficSimulation.VehicleEntry entry = (TrafficSimulation.VehicleEntry) event;
+                out.writeByte(entry.reverse ? VEHICLE_ENTRY_REVERSE : VEHICLE_ENTRY);
+                out.writeInt(roadIndex.get(entry.road));
+            } else {
+                TrafficSimulation.VehicleExit exit = (TrafficSimulation.VehicleExit) event;
+                out.writeByte(exit.reverse ? VEHICLE_EXIT_REVERSE : VEHICLE_EXIT);
+                out.writeInt(roadIndex.get(exit.road));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a snapshot into a simulation over the same map. The whole snapshot is read and checked
+     * before anything is changed, so a bad file leaves the simulation as it was. Pending events of
+     * the simulation are replaced; listeners are kept but not told about the jump. The stream is
+     * read ahead through a buffer, so it should hold nothing after the snapshot.
+     */
+    public static void read(TrafficSimulation simulation, InputStream source) throws IOException {
+        CityMap cityMap = simulation.getCityMap();
+        List<Road> roads = cityMap.getRoads();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, BUFFER_SIZE));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a simulation snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        if (in.readLong() != fingerprint(roads)) {
+            throw new IllegalArgumentException("Snapshot was taken on a different map");
+        }
+        double time = in.readDouble();
+        long processedEvents = in.readLong();
+        long lightChanges = in.readLong();
+        long vehiclesEntered = in.readLong();
+        long vehiclesLeft = in.readLong();
+        long vehiclesRejected = in.readLong();
+
+        int roadCount = in.readInt();
+        if (roadCount != roads.size()) {
+            throw new IllegalArgumentException("Snapshot has " + roadCount + " roads, the map has " + roads.size());
+        }
+        int[] vehicleCounts = new int[roadCount];
+        for (int i = 0; i < roadCount; i++) {
+            vehicleCounts[i] = in.readInt();
+            if (vehicleCounts[i] < 0) {
+                throw new IOException("Negative vehicle count " + vehicleCounts[i] + " for road " + i + " in snapshot");
+            }
+        }
+        int[] reverseCounts = new int[roadCount];
+        for (int i = 0; i < roadCount; i++) {
+            reverseCounts[i] = in.readInt();
+            if (reverseCounts[i] < 0) {
+                throw new IOException("Negative vehicle count " + reverseCounts[i] + " for road " + i + " in snapshot");
+            }
+            if (reverseCounts[i] > 0 && roads.get(i).isOneWay()) {
+                throw new IllegalArgumentException("Snapshot has reverse traffic on one-way road " + roads.get(i));
+            }
+        }
+        byte[] blocked = new byte[(roadCount + 7) / 8];
+        in.readFully(blocked);
+
+        int lightCount = in.readInt();
+        Intersection[] lit = new Intersection[lightCount];
+        int[][] phases = new int[lightCount][];
+        for (int l = 0; l < lightCount; l++) {
+            String id = in.readUTF();
+            lit[l] = cityMap.getIntersectionById(id);
+            if (lit[l] == null || lit[l].getTrafficLight() == null) {
+                throw new IllegalArgumentException("Snapshot has a traffic light at " + id + ", the map does not");
+            }
+            phases[l] = new int[] {in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt()};
+            if (phases[l][0] < 0 || phases[l][1] < 0 || phases[l][2] < 0
+                    || (long) phases[l][0] + phases[l][1] + phases[l][2] <= 0) {
+                throw new IOException("Invalid cycle " + phases[l][0] + "/" + phases[l][1] + "/" + phases[l][2]
+                        + " for the traffic light at " + id + " in snapshot");
+            }
+        }
+
+        int modelCount = in.readInt();
+        WeightSimulator[] models = new WeightSimulator[modelCount];
+        for (int m = 0; m < modelCount; m++) {
+            RandomStream[] streams = new RandomStream[in.readInt()];
+            for (int p = 0; p < streams.length; p++) {
+                streams[p] = RandomStream.restore(in.readLong(), in.readLong());
+            }
+            models[m] = new WeightSimulator(cityMap, streams, ForkJoinPool.commonPool());
+        }
+
+        int eventCount = in.readInt();
+        double[] eventTimes = new double[eventCount];
+        SimulationEngine.Event[] events = new SimulationEngine.Event[eventCount];
+        for (int e = 0; e < eventCount; e++) {
+            eventTimes[e] = in.readDouble();
+            byte kind = in.readByte();
+            int ref = in.readInt();
+            switch (kind) {
+                case PHASE_CHANGE:
+                    events[e] = simulation.new PhaseChange(lit[checkIndex(ref, lightCount)]);
+                    break;
+                case BACKGROUND_TRAFFIC:
+                    events[e] = simulation.new BackgroundTraffic(models[checkIndex(ref, modelCount)], in.readDouble());
+                    break;
+                case VEHICLE_ENTRY:
+                case VEHICLE_ENTRY_REVERSE:
+                    events[e] = simulation.new VehicleEntry(roads.get(checkIndex(ref, roadCount)),
+                            kind == VEHICLE_ENTRY_REVERSE);
+                    break;
+                case VEHICLE_EXIT:
+                case VEHICLE_EXIT_REVERSE:
+                    events[e] = simulation.new VehicleExit(roads.get(checkIndex(ref, roadCount)),
+                            kind == VEHICLE_EXIT_REVERSE);
+                    break;
+                default:
+                    throw new IOException("Unknown event kind " + kind + " in snapshot");
+            }
+        }
+
+        // Everything read; now overwrite the simulation
+        for (int i = 0; i < roadCount; i++) {
+            roads.get(i).restoreState(vehicleCounts[i], reverseCounts[i], (blocked[i >>> 3] & (1 << (i & 7))) != 0);
+        }
+        for (int l = 0; l < lightCount; l++) {
+            TrafficLight light = lit[l].getTrafficLight();
+            int[] phase = phases[l];
+            light.setCycleDuration(phase[0], phase[1], phase[2]);
+            light.setOffset(phase[3]);
+            light.setShift(phase[4]);
+            light.setCurrentTime(phase[5]);
+        }
+        SimulationEngine engine = simulation.getEngine();
+        engine.restart(time, processedEvents);
+        for (int e = 0; e < eventCount; e++) {
+            engine.schedule(eventTimes[e], events[e]); // In firing order, so ties keep their order
+        }
+        simulation.restoreCounters(lightChanges, vehiclesEntered, vehiclesLeft, vehiclesRejected);
+    }
+
+    // Catches snapshots of another map with the same road count
+    private static long fingerprint(List<Road> roads) {
+        long hash = roads.size();
+        for (Road road : roads) {
+            hash = hash * 31 + road.getSource().getId().hashCode();
+            hash = hash * 31 + road.getDestination().getId().hashCode();
+        }
+        return hash;
+    }
+
+    private static Map<Road, Integer> indexRoads(List<Road> roads) {
+        Map<Road, Integer> index = new IdentityHashMap<>(roads.size());
+        for (int i = 0; i < roads.size(); i++) {
+            index.put(roads.get(i), i);
+        }
+        return index;
+    }
+
+    // Identity search; a simulation has only a handful of background traffic models
+    private static int indexOf(List<WeightSimulator> models, WeightSimulator model) {
+        for (int m = 0; m < models.size(); m++) {
+            if (models.get(m) == model) {
+                return m;
+            }
+        }
+        return -1;
+    }
+
+    private static int checkIndex(int index, int size) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IOException("Snapshot refers to item " + index + " of " + size);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,241 @@
+package com.simulation;
+
+import com.model.CityMap;
+import com.model.Intersection;
+import com.model.Road;
+import com.model.TrafficLight;
+import com.pathfinding.CostMetric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives a {@link CityMap} with a {@link SimulationEngine}. It handles three kinds of events:
+ * traffic light phase changes, vehicles entering and leaving roads, and optionally the random
+ * background traffic of a {@link WeightSimulator} at a fixed simulated interval. Nothing here
+ * depends on JavaFX, so a whole day can be simulated headless and faster than real time. A UI
+ * only has to advance the engine and redraw when a listener reports a change. The whole state,
+ * pending events included, can be saved and restored with {@link SimulationSnapshot}.
+ */
+public class TrafficSimulation {
+    public static final double DEFAULT_TRAFFIC_INTERVAL = 2.0; // Seconds between background traffic updates
+    private static final double PHASE_EPSILON = 1e-6; // Guards against re-firing at a phase boundary
+
+    // Callbacks for changes a view or a statistics collector may care about
+    public interface Listener {
+        default void lightChanged(Intersection intersection, TrafficLight.State state, double time) {
+        }
+
+        default void vehicleEntered(Road road, double time) {
+        }
+
+        default void vehicleLeft(Road road, double time) {
+        }
+
+        default void trafficUpdated(double time) {
+        }
+    }
+
+    private final CityMap cityMap;
+    private final SimulationEngine engine;
+    private final List<Listener> listeners = new ArrayList<>();
+    private long lightChanges;
+    private long vehiclesEntered;
+    private long vehiclesLeft;
+    private long vehiclesRejected;
+
+    public TrafficSimulation(CityMap cityMap) {
+        this(cityMap, new SimulationEngine());
+    }
+
+    public TrafficSimulation(CityMap cityMap, SimulationEngine engine) {
+        this.cityMap = cityMap;
+        this.engine = engine;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Schedule the next phase change of every traffic light on the map
+    public void startTrafficLights() {
+        double now = engine.getTime();
+        for (Intersection intersection : cityMap.getIntersections()) {
+            TrafficLight light = intersection.getTrafficLight();
+            if (light != null && light.getCycleDuration() > 0) {
+                light.setCurrentTime((int) now);
+                engine.schedule(now + nextPhaseChange(light, now), new PhaseChange(intersection));
+            }
+        }
+    }
+
+    // Time until the light's next phase change, skipping a boundary we are sitting on
+    private static double nextPhaseChange(TrafficLight light, double time) {
+        double left = light.timeLeftAt(time);
+        return left > PHASE_EPSILON ? left : PHASE_EPSILON + light.timeLeftAt(time + PHASE_EPSILON);
+    }
+
+    // Run the given background traffic model every `interval` simulated seconds
+    public void startBackgroundTraffic(WeightSimulator weightSimulator, double interval) {
+        engine.scheduleAfter(interval, new BackgroundTraffic(weightSimulator, interval));
+    }
+
+    /**
+     * A vehicle enters the road at `time` and leaves it once it has driven the road and waited
+     * out the light at its end. Blocked roads turn the vehicle away.
+     */
+    public void scheduleVehicle(Road road, double time) {
+        scheduleVehicle(road, false, time);
+    }
+
+    // Same for a vehicle driving the road destination -> source, which must then be two-way
+    public void scheduleVehicle(Road road, boolean reverse, double time) {
+        if (reverse && road.isOneWay()) {
+            throw new IllegalArgumentException("One-way road " + road + " cannot be travelled in reverse");
+        }
+        engine.schedule(time, new VehicleEntry(road, reverse));
+    }
+
+    /*
+     * The events are named classes rather than lambdas so a SimulationSnapshot can tell them
+     * apart and write down what each pending one refers to.
+     */
+
+    final class PhaseChange implements SimulationEngine.Event {
+        final Intersection intersection;
+
+        PhaseChange(Intersection intersection) {
+            this.intersection = intersection;
+        }
+
+        @Override
+        public void fire(SimulationEngine engine) {
+            TrafficLight light = intersection.getTrafficLight();
+            double now = engine.getTime();
+            light.setCurrentTime((int) Math.round(now)); // Keep the light's own getters in step
+            lightChanges++;
+            TrafficLight.State state = light.stateAt(now + PHASE_EPSILON);
+            for (Listener listener : listeners) {
+                listener.lightChanged(intersection, state, now);
+            }
+            engine.schedule(now + nextPhaseChange(light, now), this);
+        }
+    }
+
+    final class BackgroundTraffic implements SimulationEngine.Event {
+        final WeightSimulator weightSimulator;
+        final double interval;
+
+        BackgroundTraffic(WeightSimulator weightSimulator, double interval) {
+            this.weightSimulator = weightSimulator;
+            this.interval = interval;
+        }
+
+        @Override
+        public void fire(SimulationEngine engine) {
+            weightSimulator.simulateTraffic();
+            for (Listener listener : listeners) {
+                listener.trafficUpdated(engine.getTime());
+            }
+            engine.scheduleAfter(interval, this);
+        }
+    }
+
+    final class VehicleEntry implements SimulationEngine.Event {
+        final Road road;
+        final boolean reverse;
+
+        VehicleEntry(Road road, boolean reverse) {
+            this.road = road;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public void fire(SimulationEngine engine) {
+            double now = engine.getTime();
+            if (road.isBlocked()) {
+                vehiclesRejected++;
+                return;
+            }
+            double leaveAt = now + traversalTime(road, reverse, now); // Uses the congestion before this vehicle joins
+            road.addVehicle(reverse);
+            vehiclesEntered++;
+            for (Listener listener : listeners) {
+                listener.vehicleEntered(road, now);
+            }
+            engine.schedule(leaveAt, new VehicleExit(road, reverse));
+        }
+    }
+
+    final class VehicleExit implements SimulationEngine.Event {
+        final Road road;
+        final boolean reverse;
+
+        VehicleExit(Road road, boolean reverse) {
+            this.road = road;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public void fire(SimulationEngine engine) {
+            road.removeVehicle(reverse);
+            vehiclesLeft++;
+            for (Listener listener : listeners) {
+                listener.vehicleLeft(road, engine.getTime());
+            }
+        }
+    }
+
+    // Seconds to drive the road at its current congestion, plus the red wait at its end on arrival
+    public static double traversalTime(Road road, double entryTime) {
+        return traversalTime(road, false, entryTime);
+    }
+
+    // Same in one direction: that direction's congestion and the light at the end it leaves by
+    public static double traversalTime(Road road, boolean reverse, double entryTime) {
+        double seconds = CostMetric.DRIVING_TIME.cost(road, reverse);
+        TrafficLight light = road.getExit(reverse).getTrafficLight();
+        if (light != null && seconds < Double.POSITIVE_INFINITY) {
+            seconds += light.waitTimeAt(entryTime + seconds);
+        }
+        return seconds;
+    }
+
+    // Advance simulated time by `duration`, firing every event due in between
+    public long run(double duration) {
+        return engine.runUntil(engine.getTime() + duration);
+    }
+
+    public SimulationEngine getEngine() {
+        return engine;
+    }
+
+    public CityMap getCityMap() {
+        return cityMap;
+    }
+
+    public long getLightChanges() {
+        return lightChanges;
+    }
+
+    public long getVehiclesEntered() {
+        return vehiclesEntered;
+    }
+
+    public long getVehiclesLeft() {
+        return vehiclesLeft;
+    }
+
+    // Vehicles turned away because their road was blocked
+    public long getVehiclesRejected() {
+        return vehiclesRejected;
+    }
+
+    // Counters as saved by a snapshot
+    void restoreCounters(long lightChanges, long vehiclesEntered, long vehiclesLeft, long vehiclesRejected) {
+        this.lightChanges = lightChanges;
+        this.vehiclesEntered = vehiclesEntered;
+        this.vehiclesLeft = vehiclesLeft;
+        this.vehiclesRejected = vehiclesRejected;
+    }
+}
@@ -2,15 +2,29 @@ package com.simulation;
 
 import com.model.CityMap;
 import com.model.Road;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Random background traffic. Each step the roads are split into a fixed number of road-index
+ * ranges, and every range draws from its own {@link RandomStream}. The ranges are processed in
+ * parallel on a ForkJoinPool. A given seed and partition count produce the same traffic on
+ * any number of threads, because each range owns its roads and its stream. The stream states
+ * are part of a {@link SimulationSnapshot}, so a restored run draws the same traffic.
+ */
 public class WeightSimulator {
     private CityMap cityMap;
     private static final int INITIAL_VEHICLES = 25; // Default vehicles for most roads
     private static final int SPECIAL_VEHICLES = 70; // Special case: 70 vehicles for A -> C
     private static final int MAX_CHANGE = 5; // Max number of vehicles to add or remove per step
-    private static final Random random = new Random();
+    public static final int DEFAULT_PARTITIONS = 64; // Road ranges per step, independent of the core count
+    private static final int PARALLEL_THRESHOLD = 16384; // Smaller maps are stepped on the calling thread
+
+    private final RandomStream[] streams; // streams[p] drives road range p
+    private final ForkJoinPool pool;
 
 
     public WeightSimulator(CityMap cityMap) {
@@ -18,12 +32,36 @@ public class WeightSimulator {
     }
 
     public WeightSimulator(CityMap cityMap, boolean initializeTraffic) {
-        this.cityMap = cityMap;
+        this(cityMap, initializeTraffic, System.nanoTime());
+    }
+
+    public WeightSimulator(CityMap cityMap, boolean initializeTraffic, long seed) {
+        this(cityMap, initializeTraffic, seed, DEFAULT_PARTITIONS, ForkJoinPool.commonPool());
+    }
+
+    public WeightSimulator(CityMap cityMap, boolean initializeTraffic, long seed, int partitions, ForkJoinPool pool) {
+        this(cityMap, splitStreams(seed, partitions), pool);
         if (initializeTraffic) {
             initializeTraffic();
         }
     }
 
+    // Resume from stream states taken from a snapshot
+    WeightSimulator(CityMap cityMap, RandomStream[] streams, ForkJoinPool pool) {
+        this.cityMap = cityMap;
+        this.streams = streams;
+        this.pool = pool;
+    }
+
+    private static RandomStream[] splitStreams(long seed, int partitions) {
+        RandomStream master = new RandomStream(seed);
+        RandomStream[] streams = new RandomStream[partitions];
+        for (int p = 0; p < partitions; p++) {
+            streams[p] = master.split();
+        }
+        return streams;
+    }
+
     // Initialize traffic
     private void initializeTraffic() {
         for (Road road : cityMap.getRoads()) {
@@ -32,27 +70,52 @@ public class WeightSimulator {
                 vehiclesToAdd = SPECIAL_VEHICLES;
             }
 
-
-
-            for (int i = 0; i < vehiclesToAdd; i++) {
-                road.addVehicle();
+            road.addVehicles(vehiclesToAdd);
+            if (!road.isOneWay()) {
+                road.addVehicles(vehiclesToAdd, true); // Both directions start equally busy
             }
         }
     }
 
     // Simulate adding or removing random number of vehicles
     public void simulateTraffic() {
-        for (Road road : cityMap.getRoads()) {
-            int change = random.nextInt(MAX_CHANGE + 1);
-            boolean addVehicles = random.nextBoolean();
-            if (addVehicles) {
-                for (int i = 0; i < change; i++) {
-                    road.addVehicle();
-                }
-            } else {
-                for (int i = 0; i < change; i++) {
-                    road.removeVehicle();
-                }
+        List<Road> roads = cityMap.getRoads();
+        int partitions = streams.length;
+        int rangeSize = (roads.size() + partitions - 1) / partitions;
+
+        if (roads.size() < PARALLEL_THRESHOLD) {
+            for (int p = 0; p < partitions; p++) {
+                simulateRange(roads, p * rangeSize, Math.min(roads.size(), (p + 1) * rangeSize), streams[p]);
+            }
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            int from = p * rangeSize;
+            int to = Math.min(roads.size(), from + rangeSize);
+            RandomStream random = streams[p];
+            tasks.add(ForkJoinTask.adapt(() -> simulateRange(roads, from, to, random)));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    RandomStream[] getStreams() {
+        return streams;
+    }
+
+    // Only this range's task touches these roads and this stream
+    private static void simulateRange(List<Road> roads, int from, int to, RandomStream random) {
+        for (int i = from; i < to; i++) {
+            Road road = roads.get(i);
+            changeTraffic(road, false, random);
+            if (!road.isOneWay()) {
+                changeTraffic(road, true, random); // Each direction of a two-way road drifts on its own
             }
 
             //System.out.println("Road: " + road.getSource().getId() + " -> " + road.getDestination().getId());
@@ -61,5 +124,14 @@ public class WeightSimulator {
         }
     }
 
-
+    // Add or remove up to MAX_CHANGE vehicles in one direction
+    private static void changeTraffic(Road road, boolean reverse, RandomStream random) {
+        int change = random.nextInt(MAX_CHANGE + 1);
+        boolean addVehicles = random.nextBoolean();
+        if (addVehicles) {
+            road.addVehicles(change, reverse);
+        } else {
+            road.removeVehicles(change, reverse);
+        }
+    }
 }
@@ -5,6 +5,9 @@ import com.model.Intersection;
 import com.model.Road;
 import com.model.OneWayRoad;
 import com.model.TrafficLight;
+import com.pathfinding.RoadGraph;
+import com.pathfinding.WeightTable;
+import com.simulation.TrafficSimulation;
 import com.simulation.WeightSimulator;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -16,9 +19,7 @@ import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
 import javafx.util.Duration;
 
-
-
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * MapView handles rendering the city map onto a JavaFX Canvas.
@@ -27,23 +28,41 @@ import java.util.Random;
 public class MapView extends Canvas {
     private static final double RADIUS = 18; // Radius for drawing intersections
     private static final double SCALE_FACTOR = 2.5; // Scale for enlarging the map
-    private static final Random random = new Random();
+    public static final long DEFAULT_SEED = 20240101L; // Same background traffic on every start
 
     private final CityMap cityMap;
+    private final RoadGraph roadGraph; // Arc order of the weight table
+    private final WeightTable weightTable; // All road weights in one pass per redraw
+    private final int[] reverseArcs; // reverseArcs[a] = opposite arc of forward arc a, or -1 on one-way roads
     private final WeightSimulator weightSimulator; // Simulates traffic changes
+    private final TrafficSimulation simulation; // Event-driven lights and traffic, paced by the wall clock
     private boolean needsRedraw = true; // Tracks if redraw is necessary
+    private final long startNanos = System.nanoTime(); // Wall clock at simulation time 0
+    private double drawnTime; // Simulation time the current frame shows
 
     /**
      * Constructor that initializes the map view and starts simulations.
      * @param cityMap the city map to render
      */
     public MapView(CityMap cityMap) {
+        this(cityMap, DEFAULT_SEED);
+    }
+
+    /**
+     * Constructor with an explicit seed for the background traffic.
+     * @param cityMap the city map to render
+     * @param seed seed of the random traffic; equal seeds replay the same traffic
+     */
+    public MapView(CityMap cityMap, long seed) {
         this.cityMap = cityMap;
-        this.weightSimulator = new WeightSimulator(cityMap, false); // Avoid reinitializing traffic
+        this.roadGraph = RoadGraph.of(cityMap);
+        this.weightTable = roadGraph.weightTable();
+        this.reverseArcs = pairReverseArcs(roadGraph);
+        this.weightSimulator = new WeightSimulator(cityMap, false, seed); // Avoid reinitializing traffic
+        this.simulation = new TrafficSimulation(cityMap);
         adjustCanvasSize();
         drawCity();
-        startVehicleUpdate();
-        startTrafficLightUpdate();
+        startSimulation();
     }
 
     /**
@@ -72,13 +91,17 @@ public class MapView extends Canvas {
     public void drawCity() {
         if (!needsRedraw) return;
         needsRedraw = false;
+        drawnTime = simulation.getEngine().getTime();
 
         GraphicsContext gc = getGraphicsContext2D();
         gc.setFill(Color.web("#2f2f2f")); // Dark background
         gc.fillRect(0, 0, getWidth(), getHeight());
 
-        for (Road road : cityMap.getRoads()) {
-            drawRoad(gc, road);
+        double[] weights = weightTable.update();
+        for (int arc = 0; arc < roadGraph.arcCount(); arc++) {
+            if (roadGraph.isReverse(arc)) continue; // Drawn with its forward arc
+            double reverseWeight = reverseArcs[arc] < 0 ? Double.NaN : weights[reverseArcs[arc]];
+            drawRoad(gc, roadGraph.road(arc), weights[arc], reverseWeight);
         }
 
         for (Intersection intersection : cityMap.getIntersections()) {
@@ -86,10 +109,26 @@ public class MapView extends Canvas {
         }
     }
 
+    private static int[] pairReverseArcs(RoadGraph graph) {
+        int[] pairs = new int[graph.arcCount()];
+        Arrays.fill(pairs, -1);
+        for (int arc = 0; arc < pairs.length; arc++) {
+            if (graph.isReverse(arc)) {
+                for (int forward : graph.arcsOf(graph.road(arc))) {
+                    if (!graph.isReverse(forward)) {
+                        pairs[forward] = arc;
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
     /**
      * Draws a road on the canvas, including style and weight.
+     * Two-way roads show the weight of each direction, source to destination first.
      */
-    private void drawRoad(GraphicsContext gc, Road road) {
+    private void drawRoad(GraphicsContext gc, Road road, double weight, double reverseWeight) {
         double[] coordinates = road.getScaledCoordinates(SCALE_FACTOR);
         double x1 = coordinates[0];
         double y1 = coordinates[1];
@@ -135,7 +174,10 @@ public class MapView extends Canvas {
         gc.setFill(Color.WHITE);
         gc.setFont(Font.font("Arial", 18 * SCALE_FACTOR));
         gc.setTextAlign(TextAlignment.CENTER);
-        gc.fillText(String.format("Weight: %.2f", road.calculateWeight()), textX, textY);
+        String label = Double.isNaN(reverseWeight)
+                ? String.format("Weight: %.2f", weight)
+                : String.format("Weight: %.2f / %.2f", weight, reverseWeight);
+        gc.fillText(label, textX, textY);
     }
 
     /**
@@ -174,7 +216,9 @@ public class MapView extends Canvas {
         // Draw traffic light if exists
         if (inter.hasTrafficLight()) {
             TrafficLight light = inter.getTrafficLight();
-            gc.setFill(light.isGreen() ? Color.LIMEGREEN : Color.RED);
+            TrafficLight.State state = light.stateAt(drawnTime);
+            gc.setFill(state == TrafficLight.State.GREEN ? Color.LIMEGREEN
+                    : state == TrafficLight.State.YELLOW ? Color.GOLD : Color.RED);
             gc.fillOval(x + RADIUS * SCALE_FACTOR - 8, y - RADIUS * SCALE_FACTOR + 8,
                     14 * SCALE_FACTOR, 14 * SCALE_FACTOR);
         }
@@ -202,33 +246,36 @@ public class MapView extends Canvas {
     }
 
     /**
-     * Starts periodic updates to simulate vehicle movements.
+     * Seconds since the map view started; the simulation is kept at this time.
      */
-    private void startVehicleUpdate() {
-        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(2), event -> {
-            weightSimulator.simulateTraffic(); // Update weights
-            needsRedraw = true; // Mark for redraw
-            drawCity();
-        }));
-
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+    public double simulationTime() {
+        return (System.nanoTime() - startNanos) / 1e9;
     }
 
     /**
-     * Starts periodic updates to toggle traffic lights.
+     * Starts the traffic simulation and paces it against the wall clock. The simulation itself
+     * runs headless; this view only advances it and redraws after an event changed something.
      */
-    private void startTrafficLightUpdate() {
-        Timeline trafficLightTimeline = new Timeline(new KeyFrame(Duration.seconds(5), event -> {
-            for (Intersection intersection : cityMap.getIntersections()) {
-                if (intersection.hasTrafficLight()) {
-                    intersection.getTrafficLight().toggle();
-                }
+    private void startSimulation() {
+        simulation.addListener(new TrafficSimulation.Listener() {
+            @Override
+            public void lightChanged(Intersection intersection, TrafficLight.State state, double time) {
+                needsRedraw = true;
             }
-            needsRedraw = true;
-            drawCity();
+
+            @Override
+            public void trafficUpdated(double time) {
+                needsRedraw = true;
+            }
+        });
+        simulation.startTrafficLights();
+        simulation.startBackgroundTraffic(weightSimulator, TrafficSimulation.DEFAULT_TRAFFIC_INTERVAL);
+
+        Timeline timeline = new Timeline(new KeyFrame(Duration.millis(250), event -> {
+            simulation.getEngine().runUntil(simulationTime());
+            drawCity(); // No-op unless an event marked the map for redraw
         }));
-        trafficLightTimeline.setCycleCount(Timeline.INDEFINITE);
-        trafficLightTimeline.play();
+        timeline.setCycleCount(Timeline.INDEFINITE);
+        timeline.play();
     }
 }